@@ -0,0 +1,96 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import com.blooddonation.blood_donation_support_system.util.IndexedPriorityQueue;
+import com.blooddonation.blood_donation_support_system.util.QueueEntry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer instruments for the blood request allocation engine, published through the
+ * actuator metrics endpoint:
+ * <ul>
+ *     <li>{@code allocation.queue.depth} gauge per queue and urgency</li>
+ *     <li>{@code allocation.wait} timer from request creation to PROCESSING and to FULFILLED</li>
+ *     <li>{@code allocation.preemptions} counter per outcome, {@code allocation.preempted} for bumped requests</li>
+ *     <li>{@code allocation.stock-check.misses} counter per call site</li>
+ *     <li>{@code allocation.worker.iteration} timer per worker loop, excluding time spent waiting for work</li>
+ * </ul>
+ */
+@Component
+public class AllocationMetrics {
+    public static final String PROCESSING = "processing";
+    public static final String FULFILLED = "fulfilled";
+
+    private static final Urgency[] URGENCIES = Urgency.values();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Publishes the depth of {@code queue} per urgency. The queue must be bucketed by
+     * {@link QueueEntry#URGENCY_BUCKET}; each gauge reads the bucket count the queue maintains, so a
+     * scrape never walks or copies the queue.
+     */
+    public void registerQueue(String name, IndexedPriorityQueue<QueueEntry> queue) {
+        for (Urgency urgency : URGENCIES) {
+            Gauge.builder("allocation.queue.depth", queue, q -> q.count(urgency.ordinal()))
+                    .description("Requests queued, by queue and urgency")
+                    .tag("queue", name)
+                    .tag("urgency", urgency.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Records the time from the request's creation to reaching {@code stage}.
+     */
+    public void recordWait(String stage, QueueEntry entry) {
+        if (entry.getUrgency() == null || entry.getCreatedMillis() == 0) return;
+        long waited = System.currentTimeMillis() - entry.getCreatedMillis();
+        waitTimer(stage, entry.getUrgency()).record(Math.max(0, waited), TimeUnit.MILLISECONDS);
+    }
+
+    public void recordWait(String stage, Urgency urgency, Duration waited) {
+        if (urgency == null || waited.isNegative()) return;
+        waitTimer(stage, urgency).record(waited);
+    }
+
+    /**
+     * @param outcome {@code preempted}, {@code infeasible} or {@code transfer-failed}
+     */
+    public void recordPreemption(String outcome, int bumped) {
+        meterRegistry.counter("allocation.preemptions", "outcome", outcome).increment();
+        if (bumped > 0) meterRegistry.counter("allocation.preempted").increment(bumped);
+    }
+
+    /**
+     * Counts an allocation attempt that found too little stock, by where it happened.
+     */
+    public void recordStockMiss(String site) {
+        meterRegistry.counter("allocation.stock-check.misses", "site", site).increment();
+    }
+
+    public Timer workerIterationTimer(String worker) {
+        return Timer.builder("allocation.worker.iteration")
+                .description("Time a worker loop spends on one batch of work")
+                .tag("worker", worker)
+                .register(meterRegistry);
+    }
+
+    // The registry returns the already registered timer for the same name and tags
+    private Timer waitTimer(String stage, Urgency urgency) {
+        return Timer.builder("allocation.wait")
+                .description("Time from request creation to the given stage")
+                .tag("stage", stage)
+                .tag("urgency", urgency.name())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
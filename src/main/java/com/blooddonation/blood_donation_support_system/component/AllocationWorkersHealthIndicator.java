@@ -0,0 +1,40 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Reports DOWN once any registered allocation worker loop has stopped, whether it was interrupted
+ * or died on an exception. The loops never return while healthy, so a finished future is a dead
+ * worker and nothing will move requests between the queues until the node restarts.
+ */
+@Component("allocationWorkers")
+public class AllocationWorkersHealthIndicator implements HealthIndicator {
+    private final Map<String, Future<?>> workers = new ConcurrentHashMap<>();
+
+    public void register(String name, Future<?> worker) {
+        workers.put(name, worker);
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = Health.up();
+        workers.forEach((name, worker) -> {
+            Future.State state = worker.state();
+            if (state == Future.State.RUNNING) {
+                builder.withDetail(name, "running");
+                return;
+            }
+            builder.down();
+            builder.withDetail(name, state == Future.State.FAILED
+                    ? "failed: " + worker.exceptionNow()
+                    : state.name().toLowerCase());
+        });
+        return builder.build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.entity.BloodRequest;
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Cluster mode only: hands out blood request work through leases on the blood_request table.
+ * Claims use SELECT ... FOR UPDATE SKIP LOCKED so concurrent nodes never claim the same row, and
+ * every status change is conditional on this node still holding the lease.
+ */
+@Component
+@Slf4j
+public class BloodRequestLeaseManager {
+    private static final List<BloodRequestStatus> LEASED_STATUSES =
+            List.of(BloodRequestStatus.PENDING, BloodRequestStatus.PROCESSING);
+
+    @Autowired
+    private BloodRequestRepository bloodRequestRepository;
+
+    @Value("${blood-request.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${blood-request.cluster.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${blood-request.cluster.claim-batch-size:100}")
+    private int claimBatchSize;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Leases a request to this node as it is created, so it never passes through the claim pool.
+     */
+    public void stamp(BloodRequest bloodRequest) {
+        if (!enabled) return;
+        bloodRequest.setLeaseOwner(nodeId);
+        bloodRequest.setLeaseExpiresAt(LocalDateTime.now().plusSeconds(leaseSeconds));
+    }
+
+    /**
+     * Claims up to one batch of unleased or expired requests and returns their ids.
+     */
+    @Transactional
+    public List<Long> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = bloodRequestRepository.lockClaimableRequestIds(now, claimBatchSize);
+        if (!ids.isEmpty()) {
+            bloodRequestRepository.claimLeases(ids, nodeId, now.plusSeconds(leaseSeconds));
+            log.info("Node {} claimed {} blood requests", nodeId, ids.size());
+        }
+        return ids;
+    }
+
+    @Transactional
+    public int renew() {
+        return bloodRequestRepository.renewLeases(nodeId, LocalDateTime.now().plusSeconds(leaseSeconds), LEASED_STATUSES);
+    }
+
+    /**
+     * Moves the request to {@code status} only while this node holds an unexpired lease on it.
+     */
+    @Transactional
+    public boolean transition(Long requestId, BloodRequestStatus status) {
+        boolean held = bloodRequestRepository.updateStatusIfLeaseHeld(requestId, status, nodeId, LocalDateTime.now()) > 0;
+        if (!held) {
+            log.warn("Node {} lost the lease on blood request {}", nodeId, requestId);
+        }
+        return held;
+    }
+
+    /**
+     * Puts a request this node marked FULFILLED back to PENDING and renews its lease. Nobody can
+     * claim a FULFILLED request, so this does not need the lease to be unexpired.
+     */
+    @Transactional
+    public boolean reopen(Long requestId) {
+        return bloodRequestRepository.reopenIfOwned(requestId, BloodRequestStatus.FULFILLED, BloodRequestStatus.PENDING,
+                nodeId, LocalDateTime.now().plusSeconds(leaseSeconds)) > 0;
+    }
+}
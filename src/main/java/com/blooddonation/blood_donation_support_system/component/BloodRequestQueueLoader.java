@@ -0,0 +1,81 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestQueueRow;
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
+import com.blooddonation.blood_donation_support_system.util.QueueEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Streams the PROCESSING and PENDING automation requests into queue entries for warm start.
+ * Rows come from a narrow projection ordered by id, so memory stays flat however large the
+ * request history grows.
+ */
+@Component
+public class BloodRequestQueueLoader {
+    private static final List<BloodRequestStatus> QUEUED_STATUSES =
+            List.of(BloodRequestStatus.PROCESSING, BloodRequestStatus.PENDING);
+
+    @Autowired
+    private BloodRequestRepository bloodRequestRepository;
+
+    @Transactional(readOnly = true)
+    public int load(BiConsumer<BloodRequestStatus, QueueEntry> sink) {
+        try (Stream<BloodRequestQueueRow> rows = bloodRequestRepository.streamQueuedRequests(QUEUED_STATUSES)) {
+            return fold(rows, sink);
+        }
+    }
+
+    /**
+     * Loads only the given requests, e.g. the ones this node has just claimed in cluster mode.
+     */
+    @Transactional(readOnly = true)
+    public int loadByIds(Collection<Long> ids, BiConsumer<BloodRequestStatus, QueueEntry> sink) {
+        if (ids.isEmpty()) return 0;
+        try (Stream<BloodRequestQueueRow> rows = bloodRequestRepository.streamQueuedRequestsByIds(QUEUED_STATUSES, ids)) {
+            return fold(rows, sink);
+        }
+    }
+
+    private int fold(Stream<BloodRequestQueueRow> rows, BiConsumer<BloodRequestStatus, QueueEntry> sink) {
+        int loaded = 0;
+        Iterator<BloodRequestQueueRow> iterator = rows.iterator();
+        BloodRequestQueueRow current = null;
+        double[] volumes = null;
+        while (iterator.hasNext()) {
+            BloodRequestQueueRow row = iterator.next();
+            if (current == null || !current.getId().equals(row.getId())) {
+                if (current != null) {
+                    sink.accept(current.getStatus(), toEntry(current, volumes));
+                    loaded++;
+                }
+                current = row;
+                volumes = new double[ComponentType.values().length];
+            }
+            if (row.getComponentType() != null && row.getVolume() != null) {
+                volumes[row.getComponentType().ordinal()] += row.getVolume();
+            }
+        }
+        if (current != null) {
+            sink.accept(current.getStatus(), toEntry(current, volumes));
+            loaded++;
+        }
+        return loaded;
+    }
+
+    private QueueEntry toEntry(BloodRequestQueueRow row, double[] volumes) {
+        int priority = BloodRequestDto.calculatePriority(row.getUrgency(), row.isPregnant(), row.isDisabled(), row.isHaveServed());
+        return QueueEntry.of(row.getId(), priority, row.getCreatedTime(), row.getRequiredDate(),
+                row.getBloodType(), row.getUrgency(), volumes);
+    }
+}
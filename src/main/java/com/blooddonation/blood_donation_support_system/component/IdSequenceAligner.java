@@ -0,0 +1,54 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the id sequences of blood_request and component_request past the ids already in their
+ * tables. Both used IDENTITY columns before switching to pooled sequences, and a schema update
+ * creates the new sequences at 1 next to tables that already hold rows.
+ * <p>
+ * Hibernate's pooled optimizer reads a sequence value as the top of a block of
+ * {@link #ALLOCATION_SIZE} ids, so a sequence is only moved when its next block would reach down
+ * to an id in use. That is only ever the case once, right after the switch; afterwards this costs
+ * one block of ids per start. Runs before the web server starts and before any request is inserted.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class IdSequenceAligner {
+    private static final int ALLOCATION_SIZE = 50;
+    private static final String[][] SEQUENCES = {
+            {"blood_request_seq", "blood_request"},
+            {"component_request_seq", "component_request"}
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void align() {
+        for (String[] sequence : SEQUENCES) {
+            try {
+                align(sequence[0], sequence[1]);
+            } catch (DataAccessException e) {
+                log.warn("Could not align sequence {} with table {}", sequence[0], sequence[1], e);
+            }
+        }
+    }
+
+    private void align(String sequence, String table) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+        if (maxId == null) return;
+        Long next = jdbcTemplate.queryForObject("SELECT nextval('" + sequence + "')", Long.class);
+        if (next != null && next - ALLOCATION_SIZE + 1 > maxId) return;
+        long restart = maxId + ALLOCATION_SIZE;
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + restart);
+        log.info("Moved sequence {} from {} to {}, past the highest {} id {}", sequence, next, restart, table, maxId);
+    }
+}
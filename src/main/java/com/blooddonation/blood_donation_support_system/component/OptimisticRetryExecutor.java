@@ -0,0 +1,87 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a stock write in its own transaction and runs it again when it loses a race on a
+ * medical_facility_stocks row, i.e. on an optimistic version conflict, a lock timeout or a
+ * deadlock. Attempts back off exponentially with full jitter, so writers that collided spread out
+ * instead of colliding again in lockstep.
+ * <p>
+ * The callback must be safe to re-run: it reads what it changes inside the transaction and keeps
+ * side effects outside the database until it has returned. Inside an existing transaction there is
+ * nothing to retry, the caller's transaction is already doomed, so the callback runs once.
+ * <p>
+ * Every retry is counted in {@code stock.write.retries} per operation and exhausted retries in
+ * {@code stock.write.conflicts}.
+ */
+@Component
+@Slf4j
+public class OptimisticRetryExecutor {
+    @Autowired
+    private MeterRegistry meterRegistry;
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${stock.retry.max-attempts:12}")
+    private int maxAttempts;
+    @Value("${stock.retry.base-delay-ms:2}")
+    private long baseDelayMillis;
+    @Value("${stock.retry.max-delay-ms:200}")
+    private long maxDelayMillis;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public <T> T execute(String operation, TransactionCallback<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transactionTemplate.execute(action);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(action);
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("stock.write.conflicts", "operation", operation).increment();
+                    log.warn("{} gave up after {} conflicting attempts", operation, attempt);
+                    throw e;
+                }
+                meterRegistry.counter("stock.write.retries", "operation", operation).increment();
+                log.debug("{} conflicted on attempt {}, retrying", operation, attempt, e);
+                backOff(attempt);
+            }
+        }
+    }
+
+    public void executeWithoutResult(String operation, Runnable action) {
+        execute(operation, status -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Full jitter: a uniform pause up to the exponentially growing cap
+    private void backOff(int attempt) {
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        long pause = ThreadLocalRandom.current().nextLong(cap + 1);
+        try {
+            TimeUnit.MILLISECONDS.sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while backing off a stock write", e);
+        }
+    }
+}
@@ -0,0 +1,985 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.StockLevelDto;
+import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
+import com.blooddonation.blood_donation_support_system.entity.StockHold;
+import com.blooddonation.blood_donation_support_system.entity.StockMovement;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.MovementType;
+import com.blooddonation.blood_donation_support_system.event.StockChangedEvent;
+import com.blooddonation.blood_donation_support_system.event.StockHoldShortenedEvent;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockHoldRepository;
+import com.blooddonation.blood_donation_support_system.util.IndexedPriorityQueue;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Authoritative in-memory view of available stock, one cell per (BloodType, ComponentType).
+ * Reads are lock-free; withdrawals reserve every requested cell atomically under per-cell
+ * lock stripes and are written to medical_facility_stocks in batches by {@link #flush()}.
+ * <p>
+ * Each cell also indexes its unexpired lots (medical_facility_stocks rows) in a min-heap on expiry
+ * date. Withdrawals are assigned to lots first-expiry-first-out as they happen, spanning as many
+ * lots as needed, and a flush writes every touched lot in a single JDBC batch. Each lot written is
+ * recorded as a withdrawal in the {@link StockMovementLog} within the same transaction.
+ * <p>
+ * Processing requests hold volume instead of withdrawing it: a hold takes volume out of the
+ * available cells, can be handed to another request on preemption, and only becomes a physical
+ * withdrawal when {@link #commit(Long)} is called at fulfillment. Holds that outlive their TTL are
+ * released by {@link #expireHolds()}.
+ * <p>
+ * In cluster mode other nodes write to the same table, so withdrawals are written through under
+ * row locks before they are acknowledged, holds are persisted to stock_holds, and the cells are
+ * refreshed from the database periodically.
+ * <p>
+ * Alongside the available volume every cell keeps a summary of what is physically on the shelf:
+ * unexpired volume including held stock, and the earliest expiry date among its lots. It moves with
+ * every lot change and is rebuilt by the midnight reload, so expired lots roll out of it daily.
+ */
+@Component
+@Slf4j
+public class StockLedger {
+    private static final BloodType[] BLOOD_TYPES = BloodType.values();
+    private static final ComponentType[] COMPONENT_TYPES = ComponentType.values();
+    public static final int CELL_COUNT = BLOOD_TYPES.length * COMPONENT_TYPES.length;
+    private static final double EPSILON = 1e-6;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+    private static final String DECREMENT_LOT_SQL =
+            "UPDATE medical_facility_stocks SET volume = volume - ?, version = version + 1 WHERE id = ? AND volume + 1e-6 >= ?";
+    private static final Comparator<Lot> FIRST_EXPIRY = Comparator
+            .comparing((Lot lot) -> lot.expiryDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(lot -> lot.id);
+
+    @Autowired
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    @Autowired
+    private StockHoldRepository stockHoldRepository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private StockMovementLog stockMovementLog;
+    @Autowired
+    private OptimisticRetryExecutor retryExecutor;
+    private TransactionTemplate writeThroughTemplate;
+
+    @Value("${blood-request.cluster.enabled:false}")
+    private boolean clusterMode;
+    private Clock clock = Clock.systemDefaultZone();
+
+    // Volumes are stored as raw double bits so readers never need a lock
+    private final AtomicLongArray volumes = new AtomicLongArray(CELL_COUNT);
+    // Unexpired volume on the shelf per cell, held stock included, as raw double bits
+    private final AtomicLongArray onHand = new AtomicLongArray(CELL_COUNT);
+    // Earliest lot expiry per cell as an epoch day, NO_EXPIRY when the cell has no dated lot
+    private final AtomicLongArray earliestExpiry = new AtomicLongArray(CELL_COUNT);
+    // Withdrawn volume not yet written to the database and not matched to a lot, guarded by the cell's stripe
+    private final double[] pendingWithdrawals = new double[CELL_COUNT];
+    // Unexpired lots per cell in first-expiry-first-out order, volumes net of pending withdrawals
+    private final IndexedPriorityQueue<Lot>[] lots;
+    // Volume taken from each lot that flush() has not written yet, per cell
+    private final Map<Long, Double>[] pendingLotWithdrawals;
+    private final ReentrantLock[] stripes = new ReentrantLock[CELL_COUNT];
+    // Volume held per owner request; entries change only under the stripes of their cells
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+
+    /**
+     * @param shortened whether lots under the hold left the shelf, so it no longer covers its request
+     */
+    private record Hold(double[] demand, long expiresAtMillis, boolean shortened) {
+        private Hold(double[] demand, long expiresAtMillis) {
+            this(demand, expiresAtMillis, false);
+        }
+    }
+
+    private static final class Lot {
+        private final Long id;
+        private final LocalDate expiryDate;
+        private double volume;
+
+        private Lot(Long id, LocalDate expiryDate, double volume) {
+            this.id = id;
+            this.expiryDate = expiryDate;
+            this.volume = volume;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StockLedger() {
+        lots = new IndexedPriorityQueue[CELL_COUNT];
+        pendingLotWithdrawals = new Map[CELL_COUNT];
+        for (int i = 0; i < CELL_COUNT; i++) {
+            stripes[i] = new ReentrantLock();
+            lots[i] = new IndexedPriorityQueue<>(FIRST_EXPIRY, lot -> lot.id);
+            pendingLotWithdrawals[i] = new HashMap<>();
+            earliestExpiry.set(i, NO_EXPIRY);
+        }
+    }
+
+    public static int cellOf(BloodType bloodType, ComponentType componentType) {
+        return bloodType.ordinal() * COMPONENT_TYPES.length + componentType.ordinal();
+    }
+
+    public static BloodType bloodTypeOf(int cell) {
+        return BLOOD_TYPES[cell / COMPONENT_TYPES.length];
+    }
+
+    public static ComponentType componentTypeOf(int cell) {
+        return COMPONENT_TYPES[cell % COMPONENT_TYPES.length];
+    }
+
+    /**
+     * @param componentVolumes requested volume indexed by {@link ComponentType#ordinal()}
+     */
+    public static double[] demandOf(BloodType bloodType, double[] componentVolumes) {
+        double[] demand = new double[CELL_COUNT];
+        for (int i = 0; i < componentVolumes.length; i++) {
+            if (componentVolumes[i] > 0) demand[cellOf(bloodType, COMPONENT_TYPES[i])] = componentVolumes[i];
+        }
+        return demand;
+    }
+
+    /**
+     * Sums the requested volume per cell; components with no type or no volume are ignored.
+     */
+    public static double[] demandOf(BloodType bloodType, List<ComponentRequestDto> componentRequests) {
+        double[] demand = new double[CELL_COUNT];
+        if (bloodType == null || componentRequests == null) return demand;
+        for (ComponentRequestDto compReq : componentRequests) {
+            if (compReq.getComponentType() == null || compReq.getVolume() <= 0) continue;
+            demand[cellOf(bloodType, compReq.getComponentType())] += compReq.getVolume();
+        }
+        return demand;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.writeThroughTemplate = new TransactionTemplate(transactionManager);
+        this.writeThroughTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void load() {
+        reload();
+    }
+
+    public double[] snapshot() {
+        double[] copy = new double[CELL_COUNT];
+        for (int i = 0; i < CELL_COUNT; i++) {
+            copy[i] = read(i);
+        }
+        return copy;
+    }
+
+    /**
+     * On-hand volume and earliest expiry of every cell, read without locks or database access.
+     * Cells are read one at a time, so a cell may be a withdrawal apart from its neighbours.
+     */
+    public List<StockLevelDto> levels() {
+        List<StockLevelDto> levels = new ArrayList<>(CELL_COUNT);
+        for (int i = 0; i < CELL_COUNT; i++) {
+            long expiry = earliestExpiry.get(i);
+            levels.add(new StockLevelDto(bloodTypeOf(i), componentTypeOf(i),
+                    Double.longBitsToDouble(onHand.get(i)),
+                    expiry != NO_EXPIRY ? LocalDate.ofEpochDay(expiry) : null));
+        }
+        return levels;
+    }
+
+    public boolean tryWithdraw(BloodType bloodType, List<ComponentRequestDto> componentRequests) {
+        return tryWithdraw(demandOf(bloodType, componentRequests));
+    }
+
+    /**
+     * @param componentVolumes requested volume indexed by {@link ComponentType#ordinal()}
+     */
+    public boolean tryWithdraw(BloodType bloodType, double[] componentVolumes) {
+        return tryWithdraw(demandOf(bloodType, componentVolumes));
+    }
+
+    /**
+     * Withdraws every non-zero cell of {@code demand} or nothing at all. Stripes are taken in
+     * ascending cell order so concurrent multi-component withdrawals cannot deadlock.
+     */
+    public boolean tryWithdraw(double[] demand) {
+        lockCells(demand);
+        try {
+            if (!coversCells(demand)) return false;
+            if (clusterMode && !writeThrough(demand)) {
+                // Another node got there first; resync the cells we were wrong about
+                refreshCells(demand);
+                return false;
+            }
+            for (int i = 0; i < CELL_COUNT; i++) {
+                if (demand[i] <= 0) continue;
+                write(i, Math.max(0, read(i) - demand[i]));
+                if (!clusterMode) consumeLots(i, demand[i]);
+            }
+            return true;
+        } finally {
+            unlockCells(demand);
+        }
+    }
+
+    /**
+     * Holds the requested volume for {@code ownerId} until it is committed, released, transferred
+     * or expires after {@code ttl}. Any hold the owner already has is replaced, but only once the
+     * new one succeeds; coverage is checked with the old hold credited back.
+     */
+    public boolean hold(Long ownerId, BloodType bloodType, double[] componentVolumes, Duration ttl) {
+        return hold(ownerId, demandOf(bloodType, componentVolumes), ttl);
+    }
+
+    /**
+     * @param demand volume per cell, possibly spanning several blood types
+     */
+    public boolean hold(Long ownerId, double[] demand, Duration ttl) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        while (true) {
+            Hold existing = holds.get(ownerId);
+            double[] released = existing != null ? existing.demand() : new double[CELL_COUNT];
+            // The cells of both the old and the new hold, so the swap happens in one locked step
+            double[] touched = new double[CELL_COUNT];
+            for (int i = 0; i < CELL_COUNT; i++) touched[i] = demand[i] + released[i];
+            boolean[] increased = new boolean[CELL_COUNT];
+            lockCells(touched);
+            try {
+                // Expired lots may shorten the old hold, so drop them before it is credited back
+                dropExpiredLots(touched);
+                // The old hold changed before its stripes were ours; start over with the current one
+                if (holds.get(ownerId) != existing) continue;
+                if (!coversCells(demand, released)) return false;
+                if (clusterMode && !Boolean.TRUE.equals(writeThroughTemplate.execute(status -> {
+                    if (!databaseCovers(demand, List.of(ownerId))) {
+                        status.setRollbackOnly();
+                        return false;
+                    }
+                    stockHoldRepository.deleteByRequestIds(List.of(ownerId));
+                    persistHold(ownerId, demand, expiresAt);
+                    return true;
+                }))) {
+                    refreshCells(demand);
+                    return false;
+                }
+                for (int i = 0; i < CELL_COUNT; i++) {
+                    if (touched[i] <= 0) continue;
+                    double level = read(i) + released[i] - demand[i];
+                    increased[i] = level > read(i) + EPSILON;
+                    write(i, Math.max(0, level));
+                }
+                holds.put(ownerId, new Hold(demand, System.currentTimeMillis() + ttl.toMillis()));
+            } finally {
+                unlockCells(touched);
+            }
+            publishIncreases(increased);
+            return true;
+        }
+    }
+
+    /**
+     * Takes over a hold persisted by another node for a request this node has just claimed, or
+     * places a new one if there is none. Outside cluster mode holds are never persisted, so this
+     * is just {@link #hold}.
+     */
+    public boolean restore(Long ownerId, BloodType bloodType, double[] componentVolumes, Duration ttl) {
+        if (!clusterMode) return hold(ownerId, bloodType, componentVolumes, ttl);
+        List<StockHold> rows = stockHoldRepository.findByRequestId(ownerId);
+        if (rows.isEmpty()) return hold(ownerId, bloodType, componentVolumes, ttl);
+        double[] demand = new double[CELL_COUNT];
+        for (StockHold row : rows) {
+            demand[cellOf(row.getBloodType(), row.getComponentType())] += row.getVolume();
+        }
+        // Refreshed cells already exclude persisted holds, so only the bookkeeping moves here
+        writeThroughTemplate.executeWithoutResult(status ->
+                stockHoldRepository.extendHold(ownerId, LocalDateTime.now().plus(ttl)));
+        holds.put(ownerId, new Hold(demand, System.currentTimeMillis() + ttl.toMillis()));
+        return true;
+    }
+
+    /**
+     * Releases the holds of {@code fromOwners} and holds the requested volume for {@code toOwner}
+     * in one step, without touching medical_facility_stocks. Nothing changes unless the released
+     * volume plus what is available covers the request.
+     */
+    public boolean transfer(Collection<Long> fromOwners, Long toOwner, BloodType bloodType,
+                            double[] componentVolumes, Duration ttl) {
+        return transfer(fromOwners, toOwner, demandOf(bloodType, componentVolumes), ttl);
+    }
+
+    /**
+     * @param demand volume per cell, possibly spanning several blood types
+     */
+    public boolean transfer(Collection<Long> fromOwners, Long toOwner, double[] demand, Duration ttl) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        boolean[] increased = new boolean[CELL_COUNT];
+        for (ReentrantLock stripe : stripes) stripe.lock();
+        try {
+            // Expired lots may shorten the donors' holds, so drop them before crediting any
+            for (int i = 0; i < CELL_COUNT; i++) dropExpiredLots(i);
+            List<Long> donors = new ArrayList<>();
+            double[] released = new double[CELL_COUNT];
+            for (Long owner : fromOwners) {
+                Hold hold = holds.get(owner);
+                if (hold == null || owner.equals(toOwner)) continue;
+                donors.add(owner);
+                for (int i = 0; i < CELL_COUNT; i++) released[i] += hold.demand()[i];
+            }
+            Hold existing = holds.get(toOwner);
+            if (existing != null) {
+                donors.add(toOwner);
+                for (int i = 0; i < CELL_COUNT; i++) released[i] += existing.demand()[i];
+            }
+            if (!coversCells(demand, released)) return false;
+            if (clusterMode && !Boolean.TRUE.equals(writeThroughTemplate.execute(status -> {
+                if (!databaseCovers(demand, donors)) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                if (!donors.isEmpty()) stockHoldRepository.deleteByRequestIds(donors);
+                persistHold(toOwner, demand, expiresAt);
+                return true;
+            }))) {
+                refreshCells(demand);
+                return false;
+            }
+            donors.forEach(holds::remove);
+            for (int i = 0; i < CELL_COUNT; i++) {
+                double level = read(i) + released[i] - demand[i];
+                increased[i] = level > read(i) + EPSILON;
+                write(i, Math.max(0, level));
+            }
+            holds.put(toOwner, new Hold(demand, System.currentTimeMillis() + ttl.toMillis()));
+        } finally {
+            for (int i = CELL_COUNT - 1; i >= 0; i--) stripes[i].unlock();
+        }
+        publishIncreases(increased);
+        return true;
+    }
+
+    /**
+     * Turns the owner's hold into a withdrawal. Returns false when there is no hold, e.g. because
+     * it expired, or when lots under it left the shelf; a shortened hold is released instead, so
+     * the request is never fulfilled with less than it asked for.
+     */
+    public boolean commit(Long ownerId) {
+        while (true) {
+            Hold hold = holds.get(ownerId);
+            if (hold == null) return false;
+            if (hold.shortened()) {
+                release(ownerId);
+                return false;
+            }
+            double[] demand = hold.demand();
+            lockCells(demand);
+            try {
+                dropExpiredLots(demand);
+                // Shortened or replaced before its stripes were ours; look again
+                if (holds.get(ownerId) != hold) continue;
+                holds.remove(ownerId);
+                if (clusterMode) {
+                    writeThroughTemplate.executeWithoutResult(status -> {
+                        stockHoldRepository.deleteByRequestIds(List.of(ownerId));
+                        for (int i = 0; i < CELL_COUNT; i++) {
+                            if (demand[i] <= 0) continue;
+                            List<MedicalFacilityStock> lots =
+                                    medicalFacilityStockRepository.lockAvailableLotsByExpiry(bloodTypeOf(i), componentTypeOf(i));
+                            List<StockMovement> movements = new ArrayList<>();
+                            double remaining = takeFromLots(lots, demand[i], movements);
+                            medicalFacilityStockRepository.saveAll(lots);
+                            stockMovementLog.append(movements);
+                            if (remaining > EPSILON) {
+                                log.warn("Held volume of request {} was short by {} of {} {}",
+                                        ownerId, remaining, bloodTypeOf(i), componentTypeOf(i));
+                            }
+                        }
+                    });
+                } else {
+                    for (int i = 0; i < CELL_COUNT; i++) {
+                        if (demand[i] > 0) consumeLots(i, demand[i]);
+                    }
+                }
+                return true;
+            } finally {
+                unlockCells(demand);
+            }
+        }
+    }
+
+    /**
+     * Returns the owner's held volume to the available cells.
+     */
+    public boolean release(Long ownerId) {
+        while (true) {
+            Hold hold = holds.get(ownerId);
+            if (hold == null) return false;
+            double[] demand = hold.demand();
+            lockCells(demand);
+            try {
+                dropExpiredLots(demand);
+                // Shortened or replaced before its stripes were ours; look again
+                if (holds.get(ownerId) != hold) continue;
+                holds.remove(ownerId);
+                if (clusterMode) {
+                    writeThroughTemplate.executeWithoutResult(status ->
+                            stockHoldRepository.deleteByRequestIds(List.of(ownerId)));
+                }
+                for (int i = 0; i < CELL_COUNT; i++) {
+                    if (demand[i] > 0) write(i, read(i) + demand[i]);
+                }
+            } finally {
+                unlockCells(demand);
+            }
+            boolean[] increased = new boolean[CELL_COUNT];
+            for (int i = 0; i < CELL_COUNT; i++) increased[i] = demand[i] > 0;
+            publishIncreases(increased);
+            return true;
+        }
+    }
+
+    /**
+     * Cluster mode: drops this node's bookkeeping for a hold whose request another node now owns.
+     * The persisted hold stays for the new owner to {@link #restore}.
+     */
+    public void forget(Long ownerId) {
+        holds.remove(ownerId);
+    }
+
+    // Lets tests move the date lots expire against
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public boolean isHeld(Long ownerId) {
+        return holds.containsKey(ownerId);
+    }
+
+    /**
+     * Volume held per cell by {@code ownerId}, or null when it holds nothing.
+     */
+    public double[] heldBy(Long ownerId) {
+        Hold hold = holds.get(ownerId);
+        return hold != null ? hold.demand().clone() : null;
+    }
+
+    /**
+     * Volume held per cell, summed over all holds at one instant.
+     */
+    public double[] heldSnapshot() {
+        double[] held = new double[CELL_COUNT];
+        for (ReentrantLock stripe : stripes) stripe.lock();
+        try {
+            for (Hold hold : holds.values()) {
+                for (int i = 0; i < CELL_COUNT; i++) held[i] += hold.demand()[i];
+            }
+        } finally {
+            for (int i = CELL_COUNT - 1; i >= 0; i--) stripes[i].unlock();
+        }
+        return held;
+    }
+
+    /**
+     * Releases holds past their TTL. In cluster mode expired holds of other nodes are deleted too
+     * and the cells are refreshed to pick up the freed volume.
+     */
+    @Scheduled(fixedDelayString = "${stock.hold.sweep-interval-ms:60000}")
+    public void expireHolds() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Hold> entry : holds.entrySet()) {
+            if (entry.getValue().expiresAtMillis() <= now && release(entry.getKey())) {
+                log.info("Hold of blood request {} expired", entry.getKey());
+            }
+        }
+        if (clusterMode) {
+            Integer deleted = writeThroughTemplate.execute(status ->
+                    stockHoldRepository.deleteExpired(LocalDateTime.now()));
+            if (deleted != null && deleted > 0) reload();
+        }
+    }
+
+    /**
+     * Mirrors a lot the caller has just persisted to medical_facility_stocks, new or updated.
+     * The cell moves by the difference to what the ledger knew of the lot; expired or empty lots
+     * are dropped from the index.
+     */
+    public void putLot(MedicalFacilityStock stock) {
+        int cell = cellOf(stock.getBloodType(), stock.getComponentType());
+        stripes[cell].lock();
+        try {
+            Lot previous = lots[cell].get(stock.getId());
+            double before = previous != null ? previous.volume : 0;
+            double after = 0;
+            if (isUnexpired(stock.getExpiryDate()) && stock.getVolume() != null) {
+                after = Math.max(0, stock.getVolume() - pendingLotWithdrawals[cell].getOrDefault(stock.getId(), 0.0));
+            }
+            if (after > EPSILON) {
+                lots[cell].offer(new Lot(stock.getId(), stock.getExpiryDate(), after));
+            } else {
+                lots[cell].remove(stock.getId());
+            }
+            if (after >= before) {
+                write(cell, read(cell) + after - before);
+            } else {
+                takeOffShelf(cell, before - after);
+            }
+            summarize(cell, after - before);
+        } finally {
+            stripes[cell].unlock();
+        }
+    }
+
+    /**
+     * Mirrors a lot the caller has just deleted from medical_facility_stocks. Withdrawals still
+     * pending against it are dropped with it.
+     */
+    public void removeLot(MedicalFacilityStock stock) {
+        int cell = cellOf(stock.getBloodType(), stock.getComponentType());
+        stripes[cell].lock();
+        try {
+            Lot removed = lots[cell].remove(stock.getId());
+            pendingLotWithdrawals[cell].remove(stock.getId());
+            if (removed != null) {
+                takeOffShelf(cell, removed.volume);
+                summarize(cell, -removed.volume);
+            }
+        } finally {
+            stripes[cell].unlock();
+        }
+    }
+
+    /**
+     * Writes accumulated withdrawals behind. Lot-assigned withdrawals from every cell go out as one
+     * JDBC batch; volume that could not be matched to a lot, or whose lot changed underneath, is
+     * taken from the cell's lots in expiry order instead. Anything that still cannot be applied is
+     * kept for the next flush. Idle ticks return before touching the database.
+     */
+    @Scheduled(fixedDelayString = "${stock.ledger.flush-interval-ms:1000}")
+    public void flush() {
+        double[] drained = new double[CELL_COUNT];
+        List<Map<Long, Double>> drainedLots = new ArrayList<>(CELL_COUNT);
+        boolean dirty = false;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            stripes[i].lock();
+            try {
+                drained[i] = pendingWithdrawals[i];
+                pendingWithdrawals[i] = 0;
+                drainedLots.add(new HashMap<>(pendingLotWithdrawals[i]));
+                pendingLotWithdrawals[i].clear();
+            } finally {
+                stripes[i].unlock();
+            }
+            dirty |= drained[i] > 0 || !drainedLots.get(i).isEmpty();
+        }
+        if (!dirty) return;
+
+        double[] unapplied = new double[CELL_COUNT];
+        try {
+            // A lot changed by a concurrent writer fails the whole flush, which is simply run again
+            retryExecutor.executeWithoutResult("stock-ledger-flush", () -> {
+                double[] unmatched = drained.clone();
+                List<StockMovement> movements = new ArrayList<>();
+                decrementLots(drainedLots, unmatched, movements);
+                for (int i = 0; i < CELL_COUNT; i++) {
+                    unapplied[i] = unmatched[i] > EPSILON
+                            ? applyWithdrawal(bloodTypeOf(i), componentTypeOf(i), unmatched[i], movements) : 0;
+                }
+                stockMovementLog.append(movements);
+            });
+        } catch (RuntimeException e) {
+            for (int i = 0; i < CELL_COUNT; i++) {
+                for (Map.Entry<Long, Double> lot : drainedLots.get(i).entrySet()) drained[i] += lot.getValue();
+            }
+            restorePending(drained);
+            throw e;
+        }
+        restorePending(unapplied);
+    }
+
+    /**
+     * Rebuilds every cell from the database after writing pending withdrawals behind. All stripes
+     * are held so no withdrawal can interleave with the reload.
+     */
+    @Scheduled(cron = "0 0 0 * * *")
+    public void reload() {
+        boolean[] increased = new boolean[CELL_COUNT];
+        for (ReentrantLock stripe : stripes) stripe.lock();
+        try {
+            flush();
+            double[] levels = rebuildLots();
+            subtractHeld(levels);
+            for (int i = 0; i < CELL_COUNT; i++) {
+                double level = levels[i] - pendingWithdrawals[i];
+                // Lots that expired overnight took held volume with them
+                if (!clusterMode && level < -EPSILON) shortenHolds(i, -level);
+                level = Math.max(0, level);
+                increased[i] = level > read(i) + EPSILON;
+                write(i, level);
+            }
+        } finally {
+            for (int i = CELL_COUNT - 1; i >= 0; i--) stripes[i].unlock();
+        }
+        publishIncreases(increased);
+    }
+
+    /**
+     * Cluster mode only: picks up stock added or withdrawn by other nodes.
+     */
+    @Scheduled(fixedDelayString = "${blood-request.cluster.stock-refresh-ms:5000}")
+    public void refresh() {
+        if (clusterMode) reload();
+    }
+
+    /**
+     * Applies {@code demand} to locked lots in its own transaction, all or nothing.
+     */
+    private boolean writeThrough(double[] demand) {
+        Boolean applied = writeThroughTemplate.execute(status -> {
+            List<StockMovement> movements = new ArrayList<>();
+            for (int i = 0; i < CELL_COUNT; i++) {
+                if (demand[i] <= 0) continue;
+                List<MedicalFacilityStock> lots =
+                        medicalFacilityStockRepository.lockAvailableLotsByExpiry(bloodTypeOf(i), componentTypeOf(i));
+                if (takeFromLots(lots, demand[i], movements) > EPSILON) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                medicalFacilityStockRepository.saveAll(lots);
+            }
+            stockMovementLog.append(movements);
+            return true;
+        });
+        return Boolean.TRUE.equals(applied);
+    }
+
+    // Runs inside a write-through transaction; locks the lots of every demanded cell
+    private boolean databaseCovers(double[] demand, Collection<Long> excludedOwners) {
+        Collection<Long> excluded = excludedOwners.isEmpty() ? List.of(-1L) : excludedOwners;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (demand[i] <= 0) continue;
+            double onHand = 0;
+            for (MedicalFacilityStock lot : medicalFacilityStockRepository.lockAvailableLotsByExpiry(bloodTypeOf(i), componentTypeOf(i))) {
+                onHand += lot.getVolume();
+            }
+            double held = stockHoldRepository.sumHeldVolume(bloodTypeOf(i), componentTypeOf(i), excluded);
+            if (onHand - held + EPSILON < demand[i]) return false;
+        }
+        return true;
+    }
+
+    private void persistHold(Long ownerId, double[] demand, LocalDateTime expiresAt) {
+        List<StockHold> rows = new ArrayList<>();
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (demand[i] <= 0) continue;
+            rows.add(StockHold.builder()
+                    .requestId(ownerId)
+                    .bloodType(bloodTypeOf(i))
+                    .componentType(componentTypeOf(i))
+                    .volume(demand[i])
+                    .expiresAt(expiresAt)
+                    .build());
+        }
+        stockHoldRepository.saveAll(rows);
+    }
+
+    // Caller holds the stripes of every cell in demand
+    private void refreshCells(double[] demand) {
+        double[] levels = loadLevels();
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (demand[i] > 0) write(i, Math.max(0, levels[i]));
+        }
+    }
+
+    /**
+     * Unexpired stock per cell less held volume.
+     */
+    private double[] loadLevels() {
+        double[] levels = new double[CELL_COUNT];
+        for (StockLevelDto level : medicalFacilityStockRepository.findAvailableStockLevels()) {
+            levels[cellOf(level.getBloodType(), level.getComponentType())] =
+                    level.getVolume() != null ? level.getVolume() : 0;
+        }
+        subtractHeld(levels);
+        return levels;
+    }
+
+    /**
+     * Rebuilds every cell's lot index from the database, net of withdrawals still pending against
+     * each lot, and returns the unexpired volume per cell. Caller holds all stripes.
+     */
+    private double[] rebuildLots() {
+        double[] levels = new double[CELL_COUNT];
+        Map<Long, Double>[] stillPending = pendingLotWithdrawals.clone();
+        for (int i = 0; i < CELL_COUNT; i++) {
+            lots[i] = new IndexedPriorityQueue<>(FIRST_EXPIRY, lot -> lot.id);
+            stillPending[i] = new HashMap<>(pendingLotWithdrawals[i]);
+            onHand.set(i, Double.doubleToRawLongBits(0));
+        }
+        for (MedicalFacilityStock stock : medicalFacilityStockRepository.findAllAvailableBlood()) {
+            int cell = cellOf(stock.getBloodType(), stock.getComponentType());
+            Double pending = stillPending[cell].remove(stock.getId());
+            double volume = (stock.getVolume() != null ? stock.getVolume() : 0) - (pending != null ? pending : 0);
+            if (volume <= EPSILON) continue;
+            lots[cell].offer(new Lot(stock.getId(), stock.getExpiryDate(), volume));
+            levels[cell] += volume;
+        }
+        // Pending withdrawals whose lot is gone are applied in expiry order on the next flush
+        for (int i = 0; i < CELL_COUNT; i++) {
+            summarize(i, levels[i]);
+            for (Map.Entry<Long, Double> orphan : stillPending[i].entrySet()) {
+                pendingLotWithdrawals[i].remove(orphan.getKey());
+                pendingWithdrawals[i] += orphan.getValue();
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Takes {@code volume} from the cell's lots, earliest expiry first, and records what was taken
+     * from each for the next flush. Caller holds the cell's stripe.
+     */
+    private void consumeLots(int cell, double volume) {
+        dropExpiredLots(cell);
+        IndexedPriorityQueue<Lot> cellLots = lots[cell];
+        double remaining = volume;
+        double shelved = 0;
+        while (remaining > EPSILON) {
+            Lot lot = cellLots.peek();
+            if (lot == null) break;
+            double taken = Math.min(lot.volume, remaining);
+            lot.volume -= taken;
+            remaining -= taken;
+            shelved -= taken;
+            pendingLotWithdrawals[cell].merge(lot.id, taken, Double::sum);
+            if (lot.volume <= EPSILON) cellLots.poll();
+        }
+        if (remaining > EPSILON) pendingWithdrawals[cell] += remaining;
+        summarize(cell, shelved);
+    }
+
+    // Caller holds the stripes of every cell in demand
+    private void dropExpiredLots(double[] demand) {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (demand[i] > 0) dropExpiredLots(i);
+        }
+    }
+
+    /**
+     * Drops lots that expired since the last reload and takes their volume out of the cell in the
+     * same step, so nothing can be withdrawn or held against them. Expiry-first order keeps every
+     * expired lot at the head of the heap. Caller holds the cell's stripe.
+     */
+    private void dropExpiredLots(int cell) {
+        IndexedPriorityQueue<Lot> cellLots = lots[cell];
+        double dropped = 0;
+        for (Lot lot = cellLots.peek(); lot != null && !isUnexpired(lot.expiryDate); lot = cellLots.peek()) {
+            cellLots.poll();
+            dropped += lot.volume;
+        }
+        if (dropped <= 0) return;
+        takeOffShelf(cell, dropped);
+        summarize(cell, -dropped);
+    }
+
+    /**
+     * Takes volume that left the shelf out of the cell. The unheld volume absorbs it first; the
+     * rest was backing holds, which shrink by that much so that releasing them later cannot bring
+     * back stock with no lot behind it. Caller holds the cell's stripe.
+     */
+    private void takeOffShelf(int cell, double volume) {
+        double unheld = Math.min(volume, read(cell));
+        write(cell, read(cell) - unheld);
+        if (volume - unheld > EPSILON) shortenHolds(cell, volume - unheld);
+    }
+
+    /**
+     * Takes {@code lost} out of the holds on the cell, the latest expiring first since their
+     * requests are furthest from fulfillment. Every operation on a hold locks all of its cells, so
+     * the cell's stripe, which the caller holds, is enough to replace it.
+     */
+    private void shortenHolds(int cell, double lost) {
+        List<Map.Entry<Long, Hold>> covering = new ArrayList<>();
+        for (Map.Entry<Long, Hold> entry : holds.entrySet()) {
+            if (entry.getValue().demand()[cell] > 0) covering.add(entry);
+        }
+        covering.sort(Comparator.comparingLong((Map.Entry<Long, Hold> entry) -> entry.getValue().expiresAtMillis()).reversed());
+        for (Map.Entry<Long, Hold> entry : covering) {
+            if (lost <= EPSILON) break;
+            Hold hold = entry.getValue();
+            double[] demand = hold.demand().clone();
+            double taken = Math.min(demand[cell], lost);
+            demand[cell] -= taken;
+            lost -= taken;
+            holds.put(entry.getKey(), new Hold(demand, hold.expiresAtMillis(), true));
+            log.warn("Hold of blood request {} lost {} of {} {} with its lot",
+                    entry.getKey(), taken, bloodTypeOf(cell), componentTypeOf(cell));
+            // Listeners only queue the request, so publishing under the stripe is safe
+            eventPublisher.publishEvent(new StockHoldShortenedEvent(entry.getKey(), bloodTypeOf(cell), componentTypeOf(cell)));
+        }
+    }
+
+    /**
+     * Moves the cell's on-hand volume by {@code delta} and takes its earliest expiry from the head
+     * of its lot index. Caller holds the cell's stripe.
+     */
+    private void summarize(int cell, double delta) {
+        double shelved = Double.longBitsToDouble(onHand.get(cell)) + delta;
+        onHand.set(cell, Double.doubleToRawLongBits(shelved > EPSILON ? shelved : 0));
+        Lot first = lots[cell].peek();
+        earliestExpiry.set(cell, first != null && first.expiryDate != null ? first.expiryDate.toEpochDay() : NO_EXPIRY);
+    }
+
+    /**
+     * Writes lot-assigned withdrawals as one JDBC batch. Lots that no longer have the volume, or
+     * no longer exist, add their share to {@code unmatched} for their cell.
+     */
+    private void decrementLots(List<Map<Long, Double>> lotWithdrawals, double[] unmatched, List<StockMovement> movements) {
+        List<Object[]> batch = new ArrayList<>();
+        List<Integer> batchCells = new ArrayList<>();
+        for (int i = 0; i < CELL_COUNT; i++) {
+            for (Map.Entry<Long, Double> lot : lotWithdrawals.get(i).entrySet()) {
+                batch.add(new Object[]{lot.getValue(), lot.getKey(), lot.getValue()});
+                batchCells.add(i);
+            }
+        }
+        if (batch.isEmpty()) return;
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_LOT_SQL, batch);
+        for (int k = 0; k < updated.length; k++) {
+            // SUCCESS_NO_INFO (-2) means the driver applied the row without reporting a count
+            int cell = batchCells.get(k);
+            double volume = (Double) batch.get(k)[0];
+            if (updated[k] == 0) {
+                unmatched[cell] += volume;
+            } else {
+                movements.add(StockMovementLog.movement(bloodTypeOf(cell), componentTypeOf(cell),
+                        MovementType.WITHDRAWAL, -volume, (Long) batch.get(k)[1]));
+            }
+        }
+    }
+
+    private void subtractHeld(double[] levels) {
+        if (clusterMode) {
+            for (Object[] held : stockHoldRepository.findHeldVolumes()) {
+                levels[cellOf((BloodType) held[0], (ComponentType) held[1])] -= ((Number) held[2]).doubleValue();
+            }
+        } else {
+            for (Hold hold : holds.values()) {
+                for (int i = 0; i < CELL_COUNT; i++) levels[i] -= hold.demand()[i];
+            }
+        }
+    }
+
+    private boolean isUnexpired(LocalDate expiryDate) {
+        return expiryDate == null || !expiryDate.isBefore(LocalDate.now(clock));
+    }
+
+    private double applyWithdrawal(BloodType bloodType, ComponentType componentType, double volume,
+                                   List<StockMovement> movements) {
+        List<MedicalFacilityStock> lots = medicalFacilityStockRepository.findAvailableLotsByExpiry(bloodType, componentType);
+        double remaining = takeFromLots(lots, volume, movements);
+        medicalFacilityStockRepository.saveAll(lots);
+        if (remaining > EPSILON) {
+            log.warn("Could not write back {} of {} withdrawn from {} {}, retrying on next flush",
+                    remaining, volume, bloodType, componentType);
+            return remaining;
+        }
+        return 0;
+    }
+
+    // Decrements lots in the given (expiry) order, records a withdrawal per lot touched and returns what could not be taken
+    private static double takeFromLots(List<MedicalFacilityStock> lots, double volume, List<StockMovement> movements) {
+        double remaining = volume;
+        for (MedicalFacilityStock lot : lots) {
+            if (remaining <= EPSILON) break;
+            double taken = Math.min(lot.getVolume(), remaining);
+            if (taken <= 0) continue;
+            lot.setVolume(lot.getVolume() - taken);
+            remaining -= taken;
+            movements.add(StockMovementLog.movement(lot.getBloodType(), lot.getComponentType(),
+                    MovementType.WITHDRAWAL, -taken, lot.getId()));
+        }
+        return remaining;
+    }
+
+    private void publishIncreases(boolean[] increased) {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (increased[i]) eventPublisher.publishEvent(new StockChangedEvent(bloodTypeOf(i), componentTypeOf(i)));
+        }
+    }
+
+    private boolean coversCells(double[] demand) {
+        return coversCells(demand, null);
+    }
+
+    /**
+     * @param credited volume per cell that becomes available as part of the same step, or null
+     * Caller holds the stripes of every cell in demand.
+     */
+    private boolean coversCells(double[] demand, double[] credited) {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (demand[i] <= 0) continue;
+            dropExpiredLots(i);
+            double credit = credited != null ? credited[i] : 0;
+            if (read(i) + credit + EPSILON < demand[i]) return false;
+        }
+        return true;
+    }
+
+    // Stripes are always taken in ascending cell order so multi-cell operations cannot deadlock
+    private void lockCells(double[] demand) {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (demand[i] > 0) stripes[i].lock();
+        }
+    }
+
+    private void unlockCells(double[] demand) {
+        for (int i = CELL_COUNT - 1; i >= 0; i--) {
+            if (demand[i] > 0) stripes[i].unlock();
+        }
+    }
+
+    private void restorePending(double[] volumesByCell) {
+        for (int i = 0; i < CELL_COUNT; i++) {
+            if (volumesByCell[i] <= 0) continue;
+            stripes[i].lock();
+            try {
+                pendingWithdrawals[i] += volumesByCell[i];
+            } finally {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private double read(int cell) {
+        return Double.longBitsToDouble(volumes.get(cell));
+    }
+
+    private void write(int cell, double volume) {
+        volumes.set(cell, Double.doubleToRawLongBits(volume));
+    }
+}
@@ -0,0 +1,200 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.entity.StockMovement;
+import com.blooddonation.blood_donation_support_system.entity.StockSnapshot;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.MovementType;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockMovementRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockSnapshotRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only record of why stock volume changed, written next to every change of
+ * medical_facility_stocks and in the same transaction. Rows are inserted in JDBC batches and never
+ * updated, so recording a movement never contends on a stock row.
+ * <p>
+ * Movements are folded into per-cell snapshots periodically, and the volume of every cell can be
+ * rebuilt as the latest snapshot plus the movements after it without reading the stock table.
+ * Movements younger than the snapshot lag are left to the tail, so a transaction still in flight
+ * when a snapshot is taken is not skipped over. The first snapshot is opened from the stock table
+ * itself, which already includes everything that happened before the log existed, less the
+ * movements inside the lag that it already includes too. Snapshots older than the retention window
+ * behind the latest one are deleted; movements are kept as the audit trail.
+ */
+@Component
+@Slf4j
+public class StockMovementLog {
+    private static final double EPSILON = 1e-6;
+    private static final String INSERT_MOVEMENT_SQL =
+            "INSERT INTO stock_movements (blood_type, component_type, movement_type, volume, lot_id, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+    @Autowired
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    private TransactionTemplate snapshotTemplate;
+    private TransactionTemplate consistentReadTemplate;
+
+    @Value("${stock.movement.snapshot-lag-ms:300000}")
+    private long snapshotLagMillis;
+    @Value("${stock.movement.snapshot-retention-days:30}")
+    private long snapshotRetentionDays;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        // Every read of a snapshot run sees the same committed state
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.consistentReadTemplate = new TransactionTemplate(transactionManager);
+        this.consistentReadTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.consistentReadTemplate.setReadOnly(true);
+    }
+
+    /**
+     * @param volume positive into stock, negative out of it
+     */
+    public static StockMovement movement(BloodType bloodType, ComponentType componentType, MovementType movementType,
+                                         double volume, Long lotId) {
+        return StockMovement.builder()
+                .bloodType(bloodType)
+                .componentType(componentType)
+                .movementType(movementType)
+                .volume(volume)
+                .lotId(lotId)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Inserts the movements as one JDBC batch, inside the caller's transaction when there is one.
+     */
+    public void append(List<StockMovement> movements) {
+        if (movements.isEmpty()) return;
+        List<Object[]> batch = new ArrayList<>(movements.size());
+        for (StockMovement movement : movements) {
+            batch.add(new Object[]{
+                    movement.getBloodType().name(),
+                    movement.getComponentType().name(),
+                    movement.getMovementType().name(),
+                    movement.getVolume(),
+                    movement.getLotId(),
+                    Timestamp.valueOf(movement.getCreatedAt())});
+        }
+        jdbcTemplate.batchUpdate(INSERT_MOVEMENT_SQL, batch);
+    }
+
+    public void append(StockMovement movement) {
+        append(List.of(movement));
+    }
+
+    /**
+     * Folds the movements since the latest snapshot into a new one, drops snapshots that fell out
+     * of the retention window, then checks the rebuilt levels against the stock table.
+     */
+    @Scheduled(fixedDelayString = "${stock.movement.snapshot-interval-ms:3600000}",
+            initialDelayString = "${stock.movement.snapshot-interval-ms:3600000}")
+    public void snapshot() {
+        snapshotTemplate.executeWithoutResult(status -> {
+            List<StockSnapshot> latest = stockSnapshotRepository.findLatest();
+            double[] levels = new double[StockLedger.CELL_COUNT];
+            LocalDateTime coveredUntil = LocalDateTime.now().minusNanos(snapshotLagMillis * 1_000_000);
+            if (latest.isEmpty()) {
+                // The stock table already holds the committed movements inside the lag, and the
+                // tail will count them again; the ones still in flight are in neither
+                addSums(levels, medicalFacilityStockRepository.sumVolumes());
+                subtractSums(levels, stockMovementRepository.sumVolumesSince(coveredUntil));
+            } else {
+                LocalDateTime from = latest.get(0).getCoveredUntil();
+                if (!coveredUntil.isAfter(from)) return;
+                addSnapshot(levels, latest);
+                addSums(levels, stockMovementRepository.sumVolumesBetween(from, coveredUntil));
+            }
+            List<StockSnapshot> rows = new ArrayList<>(StockLedger.CELL_COUNT);
+            for (int cell = 0; cell < StockLedger.CELL_COUNT; cell++) {
+                rows.add(StockSnapshot.builder()
+                        .coveredUntil(coveredUntil)
+                        .bloodType(StockLedger.bloodTypeOf(cell))
+                        .componentType(StockLedger.componentTypeOf(cell))
+                        .volume(levels[cell])
+                        .build());
+            }
+            stockSnapshotRepository.saveAll(rows);
+            stockSnapshotRepository.deleteCoveredBefore(coveredUntil.minusDays(snapshotRetentionDays));
+        });
+        reconcile();
+    }
+
+    /**
+     * Volume per cell rebuilt as the latest snapshot plus the movements after it, expired lots
+     * included until the expiry sweep removes them. Before the first snapshot the stock table is
+     * summed instead.
+     */
+    public double[] currentLevels() {
+        double[] levels = new double[StockLedger.CELL_COUNT];
+        List<StockSnapshot> latest = stockSnapshotRepository.findLatest();
+        if (latest.isEmpty()) {
+            addSums(levels, medicalFacilityStockRepository.sumVolumes());
+            return levels;
+        }
+        addSnapshot(levels, latest);
+        addSums(levels, stockMovementRepository.sumVolumesSince(latest.get(0).getCoveredUntil()));
+        return levels;
+    }
+
+    /**
+     * Logs every cell whose rebuilt level differs from the stock table, i.e. a change of
+     * medical_facility_stocks that was not recorded as a movement. Both sides are read from the
+     * same database snapshot.
+     */
+    public void reconcile() {
+        double[] recorded = new double[StockLedger.CELL_COUNT];
+        double[] stocked = new double[StockLedger.CELL_COUNT];
+        consistentReadTemplate.executeWithoutResult(status -> {
+            System.arraycopy(currentLevels(), 0, recorded, 0, StockLedger.CELL_COUNT);
+            addSums(stocked, medicalFacilityStockRepository.sumVolumes());
+        });
+        for (int cell = 0; cell < StockLedger.CELL_COUNT; cell++) {
+            if (Math.abs(recorded[cell] - stocked[cell]) > EPSILON) {
+                log.warn("Stock movements of {} {} add up to {} but the stock table holds {}",
+                        StockLedger.bloodTypeOf(cell), StockLedger.componentTypeOf(cell), recorded[cell], stocked[cell]);
+            }
+        }
+    }
+
+    private static void addSnapshot(double[] levels, List<StockSnapshot> snapshot) {
+        for (StockSnapshot row : snapshot) {
+            levels[StockLedger.cellOf(row.getBloodType(), row.getComponentType())] += row.getVolume();
+        }
+    }
+
+    private static void addSums(double[] levels, List<Object[]> sums) {
+        for (Object[] row : sums) {
+            levels[StockLedger.cellOf((BloodType) row[0], (ComponentType) row[1])] += ((Number) row[2]).doubleValue();
+        }
+    }
+
+    private static void subtractSums(double[] levels, List<Object[]> sums) {
+        for (Object[] row : sums) {
+            levels[StockLedger.cellOf((BloodType) row[0], (ComponentType) row[1])] -= ((Number) row[2]).doubleValue();
+        }
+    }
+}
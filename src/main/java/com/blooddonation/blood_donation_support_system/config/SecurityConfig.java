@@ -63,6 +63,8 @@ public class SecurityConfig {
                 )
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/**").permitAll()
+                        .requestMatchers("/actuator/health/**").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/api/user/account/list-account", "/api/user/account/{accountId}/role", "/api/user/account/{accountId}/status", "/api/user/account/list-account/{accountId}").hasRole("ADMIN")
                         .requestMatchers("/api/user/account/**").hasAnyRole("MEMBER", "ADMIN", "STAFF")
                         .requestMatchers("/api/user/profile/list-profile/{accountId}", "/api/user/profile/list-profile", "/api/user/profile/list-profile/{accountId}/history", "/api/user/profile/create").hasRole("ADMIN")
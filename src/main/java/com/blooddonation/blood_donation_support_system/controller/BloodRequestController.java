@@ -1,13 +1,21 @@
 package com.blooddonation.blood_donation_support_system.controller;
 
 import com.blooddonation.blood_donation_support_system.dto.*;
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
 import com.blooddonation.blood_donation_support_system.service.IBloodRequestService;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -22,11 +30,42 @@ public class BloodRequestController {
         return new ResponseEntity<>(iBloodRequestService.findAllBloodRequest(), HttpStatus.OK);
     }
 
+    @GetMapping("/requests")
+    public ResponseEntity<BloodRequestPageDto> getRequests(
+            @RequestParam(required = false) BloodRequestStatus status,
+            @RequestParam(required = false) Urgency urgency,
+            @RequestParam(required = false) BloodType bloodType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int size) {
+        BloodRequestFilterDto filter = BloodRequestFilterDto.builder()
+                .status(status)
+                .urgency(urgency)
+                .bloodType(bloodType)
+                .createdFrom(createdFrom)
+                .createdTo(createdTo)
+                .build();
+        return new ResponseEntity<>(iBloodRequestService.findBloodRequests(filter, after, size), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportRequests(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+        StreamingResponseBody body = outputStream -> iBloodRequestService.exportBloodRequests(since, outputStream);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @PostMapping("/create-request")
     public ResponseEntity<BloodRequestDto> createRequest(@RequestBody BloodRequestDto bloodRequestDto) {
         return new ResponseEntity<>(iBloodRequestService.createBloodRequest(bloodRequestDto), HttpStatus.CREATED);
     }
 
+    @PostMapping("/create-requests")
+    public ResponseEntity<List<BulkBloodRequestResultDto>> createRequests(@Valid @RequestBody BulkBloodRequestDto bulkBloodRequestDto) {
+        return new ResponseEntity<>(iBloodRequestService.createBloodRequests(bulkBloodRequestDto.getBloodRequests()), HttpStatus.CREATED);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<BloodRequestDto> getRequestById(@PathVariable int id) {
         return new ResponseEntity<>(iBloodRequestService.findBloodRequestById(id), HttpStatus.OK);
@@ -2,9 +2,12 @@ package com.blooddonation.blood_donation_support_system.controller;
 
 import com.blooddonation.blood_donation_support_system.dto.AccountDto;
 import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.DemandForecastDto;
 import com.blooddonation.blood_donation_support_system.dto.MedicalFacilityStockDto;
+import com.blooddonation.blood_donation_support_system.dto.StockLevelDto;
 import com.blooddonation.blood_donation_support_system.enums.BloodType;
 import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.service.DemandForecastService;
 import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
 import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
 import com.blooddonation.blood_donation_support_system.util.JwtUtil;
@@ -22,6 +25,8 @@ public class MedicalFacilityStockController {
     @Autowired
     private MedicalFacilityStockService medicalFacilityStockService;
     @Autowired
+    private DemandForecastService demandForecastService;
+    @Autowired
     private JwtUtil jwtUtil;
 
     @PostMapping("/add-from-event/{eventId}")
@@ -53,10 +58,9 @@ public class MedicalFacilityStockController {
     }
 
     @GetMapping("/check-stock")
-    public ResponseEntity<String> checkStock(@CookieValue("jwt-token") String token) {
+    public ResponseEntity<String> checkStock() {
         try {
-            AccountDto accountDto = jwtUtil.extractUser(token);
-            String result = medicalFacilityStockService.updateBeforeWithdraw(accountDto.getEmail());
+            String result = medicalFacilityStockService.getExpiryReport();
             return ResponseEntity.ok(result);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -71,6 +75,16 @@ public class MedicalFacilityStockController {
         return new ResponseEntity<>(medicalFacilityStockService.getAllAvailableBlood(), HttpStatus.OK);
     }
 
+    @GetMapping("/stock-summary")
+    public ResponseEntity<List<StockLevelDto>> getStockSummary() {
+        return new ResponseEntity<>(medicalFacilityStockService.getStockSummary(), HttpStatus.OK);
+    }
+
+    @GetMapping("/forecast")
+    public ResponseEntity<List<DemandForecastDto>> getForecast() {
+        return new ResponseEntity<>(demandForecastService.getForecast(), HttpStatus.OK);
+    }
+
     @PostMapping("/get-stock-by-type")
     public ResponseEntity<List<MedicalFacilityStockDto>> getStockByType(
             @RequestBody List<ComponentType> componentTypes,
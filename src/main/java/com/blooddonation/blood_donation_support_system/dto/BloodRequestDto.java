@@ -14,6 +14,8 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 public class BloodRequestDto {
+    public static final int MAX_PRIORITY = 7;
+
     private Long id;
     private Long profileId;
     private ProfileDto profile;
@@ -34,6 +36,10 @@ public class BloodRequestDto {
     private List<BloodUnitDto> bloodUnits;
 
     public int calculatePriority() {
+        return calculatePriority(urgency, isPregnant, isDisabled, haveServed);
+    }
+
+    public static int calculatePriority(Urgency urgency, boolean isPregnant, boolean isDisabled, boolean haveServed) {
         int priority = 0;
         if (urgency != null) {
             switch (urgency) {
@@ -0,0 +1,25 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional filters for blood request listings; null fields do not filter. The created time
+ * range is inclusive at both ends.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BloodRequestFilterDto {
+    private BloodRequestStatus status;
+    private Urgency urgency;
+    private BloodType bloodType;
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+}
@@ -0,0 +1,19 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * One keyset page of blood requests, newest first. Pass {@code nextCursor} as {@code after} to
+ * fetch the next page; it is null on the last page.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BloodRequestPageDto {
+    private List<BloodRequestSummaryDto> items;
+    private Long nextCursor;
+}
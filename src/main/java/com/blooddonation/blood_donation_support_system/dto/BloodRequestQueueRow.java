@@ -0,0 +1,28 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import com.blooddonation.blood_donation_support_system.enums.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One (request, component) row of the queue warm-start projection; requests without components
+ * produce a single row with a null component type.
+ */
+@Getter
+@AllArgsConstructor
+public class BloodRequestQueueRow {
+    private Long id;
+    private BloodRequestStatus status;
+    private Urgency urgency;
+    private BloodType bloodType;
+    private LocalDateTime createdTime;
+    private LocalDate requiredDate;
+    private boolean isPregnant;
+    private boolean isDisabled;
+    private boolean haveServed;
+    private ComponentType componentType;
+    private Double volume;
+}
@@ -0,0 +1,43 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List view of a blood request: its own columns, the requester's name and the component
+ * requests, without the profile, blood unit or medical condition graphs.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BloodRequestSummaryDto {
+    private Long id;
+    private Long profileId;
+    private String profileName;
+    private BloodRequestStatus status;
+    private Urgency urgency;
+    private BloodType bloodType;
+    private LocalDateTime createdTime;
+    private LocalDate requiredDate;
+    private LocalDateTime endTime;
+    private boolean isAutomation;
+    @Builder.Default
+    private List<ComponentRequestDto> componentRequests = new ArrayList<>();
+
+    // Query projection constructor; component requests are attached afterwards
+    public BloodRequestSummaryDto(Long id, Long profileId, String profileName, BloodRequestStatus status,
+                                  Urgency urgency, BloodType bloodType, LocalDateTime createdTime,
+                                  LocalDate requiredDate, LocalDateTime endTime, boolean isAutomation) {
+        this(id, profileId, profileName, status, urgency, bloodType, createdTime, requiredDate, endTime,
+                isAutomation, new ArrayList<>());
+    }
+}
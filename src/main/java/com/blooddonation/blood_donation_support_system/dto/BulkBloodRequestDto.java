@@ -0,0 +1,14 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkBloodRequestDto {
+    @Size(min = 1, message = "At least one blood request is required")
+    private List<BloodRequestDto> bloodRequests;
+}
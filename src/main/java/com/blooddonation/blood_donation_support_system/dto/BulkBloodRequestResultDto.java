@@ -0,0 +1,17 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import lombok.*;
+
+/**
+ * Outcome of one item of a bulk blood request intake, in the order the items were sent.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkBloodRequestResultDto {
+    private int index;
+    private boolean success;
+    private BloodRequestDto bloodRequest;
+    private String error;
+}
@@ -0,0 +1,26 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DemandForecastDto {
+    private BloodType bloodType;
+    private ComponentType componentType;
+    // Unheld stock volume
+    private double availableVolume;
+    // Requested volume over the rolling window, and its daily average
+    private double windowDemand;
+    private double averageDailyDemand;
+    // Exponentially weighted daily demand over completed days, favouring recent days
+    private double trendDailyDemand;
+    // Available volume over the larger of the two daily rates; null when there is no demand
+    private Double daysOfSupply;
+}
@@ -0,0 +1,21 @@
+package com.blooddonation.blood_donation_support_system.dto;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StockLevelDto {
+    private BloodType bloodType;
+    private ComponentType componentType;
+    private Double volume;
+    private LocalDate earliestExpiryDate;
+}
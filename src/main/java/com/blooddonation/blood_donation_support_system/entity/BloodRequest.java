@@ -3,6 +3,9 @@ package com.blooddonation.blood_donation_support_system.entity;
 import com.blooddonation.blood_donation_support_system.enums.*;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -15,9 +18,15 @@ import java.util.Set;
 @AllArgsConstructor
 @Builder
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_blood_request_status", columnList = "status"),
+        @Index(name = "idx_blood_request_inserted_at", columnList = "insertedAt")
+})
 public class BloodRequest {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence rather than IDENTITY so bulk intake inserts in JDBC batches; see IdSequenceAligner
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "blood_request_seq")
+    @SequenceGenerator(name = "blood_request_seq", sequenceName = "blood_request_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.EAGER)
@@ -29,6 +38,11 @@ public class BloodRequest {
 
     private LocalDateTime createdTime;
 
+    // Server time of the insert; createdTime comes from the client and may be backdated
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime insertedAt;
+
     private LocalDateTime endTime;
 
     private LocalDate requiredDate;
@@ -39,10 +53,13 @@ public class BloodRequest {
     @Enumerated(EnumType.STRING)
     private BloodType bloodType;
 
+    // Subselect fetching loads each collection with one extra query instead of joining both bags
     @OneToMany(mappedBy = "bloodRequest", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SUBSELECT)
     private List<ComponentRequest> componentRequests;
 
     @OneToMany(mappedBy = "bloodRequest", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SUBSELECT)
     private List<BloodUnit> bloodUnits;
 
     @Enumerated(EnumType.STRING)
@@ -60,4 +77,11 @@ public class BloodRequest {
 
     @Builder.Default
     private boolean isAutomation = true;
+
+    // Cluster work lease; only written on insert or through lease queries
+    @Column(updatable = false)
+    private String leaseOwner;
+
+    @Column(updatable = false)
+    private LocalDateTime leaseExpiresAt;
 }
@@ -15,7 +15,8 @@ import java.time.LocalDate;
 public class ComponentRequest {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "component_request_seq")
+    @SequenceGenerator(name = "component_request_seq", sequenceName = "component_request_seq", allocationSize = 50)
     private Long id;
 
     @Enumerated(EnumType.STRING)
@@ -15,7 +15,7 @@ import java.util.List;
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "medical_facility_stocks")
+@Table(name = "medical_facility_stocks", indexes = @Index(name = "idx_medical_facility_stock_expiry", columnList = "expiryDate"))
 public class MedicalFacilityStock {
 
     @Id
@@ -37,4 +37,9 @@ public class MedicalFacilityStock {
     @JsonFormat(pattern = "dd-MM-yyyy")
     private LocalDate expiryDate;
 
+    // Bumped by every write, including the set-based UPDATEs that bypass the entity
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.blooddonation.blood_donation_support_system.entity;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A medical_facility_stocks lot removed by the expiry sweep, kept so staff can be told which
+ * units to take off the shelf.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "stock_expiry_logs", indexes = @Index(name = "idx_stock_expiry_log_removed_at", columnList = "removedAt"))
+public class StockExpiryLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long stockId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private BloodType bloodType;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ComponentType componentType;
+
+    @Column(nullable = false)
+    private Double volume;
+
+    @Column(nullable = false)
+    private LocalDate expiryDate;
+
+    @Column(nullable = false)
+    private LocalDateTime removedAt;
+}
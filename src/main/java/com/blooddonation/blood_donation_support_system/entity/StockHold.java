@@ -0,0 +1,43 @@
+package com.blooddonation.blood_donation_support_system.entity;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Volume of one (BloodType, ComponentType) held for a processing blood request. Only written in
+ * cluster mode, where every node has to see the holds of the others.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "stock_holds", indexes = @Index(name = "idx_stock_hold_request", columnList = "requestId"))
+public class StockHold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long requestId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private BloodType bloodType;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ComponentType componentType;
+
+    @Column(nullable = false)
+    private Double volume;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,48 @@
+package com.blooddonation.blood_donation_support_system.entity;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.MovementType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One change to the volume of a (BloodType, ComponentType), positive into stock and negative out
+ * of it. Rows are only ever inserted.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "stock_movements", indexes = @Index(name = "idx_stock_movement_created_at", columnList = "createdAt"))
+public class StockMovement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private BloodType bloodType;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ComponentType componentType;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private MovementType movementType;
+
+    @Column(nullable = false)
+    private Double volume;
+
+    // medical_facility_stocks lot the volume went into or came out of
+    private Long lotId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,40 @@
+package com.blooddonation.blood_donation_support_system.entity;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Volume of one (BloodType, ComponentType) folded from every stock movement created before
+ * {@code coveredUntil}. A snapshot is the set of rows sharing the same {@code coveredUntil}.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "stock_snapshots", indexes = @Index(name = "idx_stock_snapshot_covered_until", columnList = "coveredUntil"))
+public class StockSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDateTime coveredUntil;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private BloodType bloodType;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ComponentType componentType;
+
+    @Column(nullable = false)
+    private Double volume;
+}
@@ -0,0 +1,24 @@
+package com.blooddonation.blood_donation_support_system.enums;
+
+public enum MovementType {
+    INTAKE("Intake"),
+    SPLIT("Component Split"),
+    WITHDRAWAL("Withdrawal"),
+    /**
+     * Nothing records returns any more; kept so movements already logged with it can still be read.
+     */
+    @Deprecated
+    RETURN("Return"),
+    EXPIRY("Expiry"),
+    ADJUSTMENT("Adjustment");
+
+    private final String type;
+
+    MovementType(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+}
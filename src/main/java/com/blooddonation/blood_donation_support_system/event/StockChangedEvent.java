@@ -0,0 +1,17 @@
+package com.blooddonation.blood_donation_support_system.event;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published whenever volume is added to a (BloodType, ComponentType) stock cell,
+ * so pending requests waiting on that cell can be re-evaluated immediately.
+ */
+@Getter
+@AllArgsConstructor
+public class StockChangedEvent {
+    private final BloodType bloodType;
+    private final ComponentType componentType;
+}
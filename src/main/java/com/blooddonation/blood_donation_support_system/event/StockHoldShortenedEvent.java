@@ -0,0 +1,18 @@
+package com.blooddonation.blood_donation_support_system.event;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a lot backing part of a request's hold left the shelf, so the request can no
+ * longer be fulfilled from that hold and has to be allocated again.
+ */
+@Getter
+@AllArgsConstructor
+public class StockHoldShortenedEvent {
+    private final Long requestId;
+    private final BloodType bloodType;
+    private final ComponentType componentType;
+}
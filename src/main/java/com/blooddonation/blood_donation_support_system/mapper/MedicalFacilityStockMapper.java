@@ -36,17 +36,29 @@ public class MedicalFacilityStockMapper {
                 .build();
     }
 
-    public static MedicalFacilityStock fromBloodUnit(BloodUnit bloodUnit) {
+    public static MedicalFacilityStock fromBloodUnit(BloodUnit bloodUnit, LocalDate donationDate) {
         if (bloodUnit == null) return null;
 
         return MedicalFacilityStock.builder()
                 .bloodType(bloodUnit.getBloodType())
                 .volume(bloodUnit.getVolume())
                 .componentType(bloodUnit.getComponentType())
-                // TODO: Add expiry date calculation logic based on component type
+                .expiryDate(expiryDateOf(bloodUnit.getComponentType(), donationDate))
                 .build();
     }
 
+    /**
+     * Shelf life of a component collected on {@code donationDate}.
+     */
+    public static LocalDate expiryDateOf(ComponentType componentType, LocalDate donationDate) {
+        return switch (componentType) {
+            case WHOLE_BLOOD -> donationDate.plusDays(35);
+            case PLASMA -> donationDate.plusYears(1);
+            case RED_BLOOD_CELLS -> donationDate.plusDays(42);
+            case PLATELETS -> donationDate.plusWeeks(1);
+        };
+    }
+
     public static MedicalFacilityStock copyWithNewVolume(MedicalFacilityStock original,
                                                          double newVolume) {
         if (original == null) return null;
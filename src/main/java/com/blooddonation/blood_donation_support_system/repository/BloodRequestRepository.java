@@ -1,17 +1,103 @@
 package com.blooddonation.blood_donation_support_system.repository;
 
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestQueueRow;
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
 import com.blooddonation.blood_donation_support_system.entity.BloodRequest;
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface BloodRequestRepository extends JpaRepository<BloodRequest, Long> {
+public interface BloodRequestRepository extends JpaRepository<BloodRequest, Long>, BloodRequestSearchRepository {
 
     BloodRequest findById(int id);
 
     @Query("SELECT br FROM BloodRequest br LEFT JOIN FETCH br.componentRequests")
     List<BloodRequest> findAllWithComponents();
+
+    // Projected so the eager back-reference to BloodRequest is never loaded
+    @Query("SELECT new com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto(" +
+            "cr.id, cr.componentType, cr.volume, cr.bloodRequest.id, cr.expiredDate) " +
+            "FROM ComponentRequest cr WHERE cr.bloodRequest.id IN :requestIds")
+    List<ComponentRequestDto> findComponentRequestsByRequestIds(Collection<Long> requestIds);
+
+    // Export pages are keyed by id so no cursor or persistence context outlives a page
+    @Query("SELECT br.id FROM BloodRequest br WHERE br.id > :afterId ORDER BY br.id")
+    List<Long> findExportIdsAfter(Long afterId, Limit limit);
+
+    @Query("SELECT br.id FROM BloodRequest br WHERE br.id > :afterId AND br.createdTime >= :since ORDER BY br.id")
+    List<Long> findExportIdsCreatedSinceAfter(Long afterId, LocalDateTime since, Limit limit);
+
+    // Profile joined in; both collections arrive in one subselect each for the whole page
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT br FROM BloodRequest br JOIN FETCH br.profile WHERE br.id IN :ids ORDER BY br.id")
+    List<BloodRequest> findAllForExport(Collection<Long> ids);
+
+    @Query("SELECT br.bloodType, cr.componentType, CAST(br.createdTime AS LocalDate), SUM(cr.volume) " +
+            "FROM BloodRequest br JOIN br.componentRequests cr " +
+            "WHERE br.createdTime >= :since AND br.bloodType IS NOT NULL AND cr.componentType IS NOT NULL " +
+            "GROUP BY br.bloodType, cr.componentType, CAST(br.createdTime AS LocalDate) " +
+            "ORDER BY CAST(br.createdTime AS LocalDate)")
+    List<Object[]> sumDailyDemandSince(LocalDateTime since);
+
+    // One row per component, keyed by request so a replay can skip requests it already counted
+    @Query("SELECT br.id, br.bloodType, cr.componentType, br.createdTime, cr.volume " +
+            "FROM BloodRequest br JOIN br.componentRequests cr " +
+            "WHERE br.insertedAt >= :since AND br.bloodType IS NOT NULL AND cr.componentType IS NOT NULL " +
+            "AND br.createdTime IS NOT NULL")
+    List<Object[]> findDemandInsertedSince(LocalDateTime since);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.blooddonation.blood_donation_support_system.dto.BloodRequestQueueRow(" +
+            "br.id, br.status, br.urgency, br.bloodType, br.createdTime, br.requiredDate, br.isPregnant, br.isDisabled, br.haveServed, " +
+            "cr.componentType, cr.volume) " +
+            "FROM BloodRequest br LEFT JOIN br.componentRequests cr " +
+            "WHERE br.isAutomation = true AND br.status IN :statuses ORDER BY br.id")
+    Stream<BloodRequestQueueRow> streamQueuedRequests(List<BloodRequestStatus> statuses);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new com.blooddonation.blood_donation_support_system.dto.BloodRequestQueueRow(" +
+            "br.id, br.status, br.urgency, br.bloodType, br.createdTime, br.requiredDate, br.isPregnant, br.isDisabled, br.haveServed, " +
+            "cr.componentType, cr.volume) " +
+            "FROM BloodRequest br LEFT JOIN br.componentRequests cr " +
+            "WHERE br.isAutomation = true AND br.status IN :statuses AND br.id IN :ids ORDER BY br.id")
+    Stream<BloodRequestQueueRow> streamQueuedRequestsByIds(List<BloodRequestStatus> statuses, Collection<Long> ids);
+
+    @Query(value = "SELECT id FROM blood_request WHERE is_automation = true AND status IN ('PENDING', 'PROCESSING') " +
+            "AND (lease_owner IS NULL OR lease_expires_at < :now) ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Long> lockClaimableRequestIds(LocalDateTime now, int limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE BloodRequest br SET br.status = :status WHERE br.id = :id")
+    int updateStatus(Long id, BloodRequestStatus status);
+
+    @Modifying
+    @Query("UPDATE BloodRequest br SET br.leaseOwner = :owner, br.leaseExpiresAt = :until WHERE br.id IN :ids")
+    int claimLeases(Collection<Long> ids, String owner, LocalDateTime until);
+
+    @Modifying
+    @Query("UPDATE BloodRequest br SET br.leaseExpiresAt = :until WHERE br.leaseOwner = :owner AND br.status IN :statuses")
+    int renewLeases(String owner, LocalDateTime until, List<BloodRequestStatus> statuses);
+
+    @Modifying
+    @Query("UPDATE BloodRequest br SET br.status = :status WHERE br.id = :id AND br.leaseOwner = :owner AND br.leaseExpiresAt >= :now")
+    int updateStatusIfLeaseHeld(Long id, BloodRequestStatus status, String owner, LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE BloodRequest br SET br.status = :to, br.leaseExpiresAt = :until WHERE br.id = :id AND br.leaseOwner = :owner AND br.status = :from")
+    int reopenIfOwned(Long id, BloodRequestStatus from, BloodRequestStatus to, String owner, LocalDateTime until);
 }
@@ -0,0 +1,14 @@
+package com.blooddonation.blood_donation_support_system.repository;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestFilterDto;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestSummaryDto;
+
+import java.util.List;
+
+public interface BloodRequestSearchRepository {
+    /**
+     * Up to {@code limit} summaries matching {@code filter} with an id below {@code afterId}
+     * (all when null), highest id first. Component requests are not populated.
+     */
+    List<BloodRequestSummaryDto> findSummaries(BloodRequestFilterDto filter, Long afterId, int limit);
+}
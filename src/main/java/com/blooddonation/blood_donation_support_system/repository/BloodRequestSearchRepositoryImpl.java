@@ -0,0 +1,55 @@
+package com.blooddonation.blood_donation_support_system.repository;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestFilterDto;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestSummaryDto;
+import com.blooddonation.blood_donation_support_system.entity.BloodRequest;
+import com.blooddonation.blood_donation_support_system.entity.Profile;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria-built so that only the filters actually given end up in the WHERE clause, which keeps
+ * the keyset condition on the primary key index.
+ */
+public class BloodRequestSearchRepositoryImpl implements BloodRequestSearchRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<BloodRequestSummaryDto> findSummaries(BloodRequestFilterDto filter, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BloodRequestSummaryDto> query = cb.createQuery(BloodRequestSummaryDto.class);
+        Root<BloodRequest> request = query.from(BloodRequest.class);
+        Join<BloodRequest, Profile> profile = request.join("profile", JoinType.LEFT);
+        query.select(cb.construct(BloodRequestSummaryDto.class,
+                request.get("id"),
+                profile.get("id"),
+                profile.get("name"),
+                request.get("status"),
+                request.get("urgency"),
+                request.get("bloodType"),
+                request.get("createdTime"),
+                request.get("requiredDate"),
+                request.get("endTime"),
+                request.get("isAutomation")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (afterId != null) predicates.add(cb.lessThan(request.get("id"), afterId));
+        if (filter.getStatus() != null) predicates.add(cb.equal(request.get("status"), filter.getStatus()));
+        if (filter.getUrgency() != null) predicates.add(cb.equal(request.get("urgency"), filter.getUrgency()));
+        if (filter.getBloodType() != null) predicates.add(cb.equal(request.get("bloodType"), filter.getBloodType()));
+        if (filter.getCreatedFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(request.get("createdTime"), filter.getCreatedFrom()));
+        }
+        if (filter.getCreatedTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(request.get("createdTime"), filter.getCreatedTo()));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.desc(request.get("id")));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+}
@@ -2,10 +2,14 @@ package com.blooddonation.blood_donation_support_system.repository;
 
 import com.blooddonation.blood_donation_support_system.entity.BloodUnit;
 import com.blooddonation.blood_donation_support_system.entity.Profile;
+import com.blooddonation.blood_donation_support_system.enums.BloodUnitStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface BloodUnitRepository extends JpaRepository<BloodUnit, Long> {
@@ -13,4 +17,7 @@ public interface BloodUnitRepository extends JpaRepository<BloodUnit, Long> {
     Page<BloodUnit> findAll(Pageable pageable);
     BloodUnit findByDonorIdAndEvent_Id(Long donorId, Long eventId);
     BloodUnit findByProfileIdAndEvent_Id(Profile profileId, Long eventId);
+    @Modifying
+    @Query("UPDATE BloodUnit u SET u.status = :status WHERE u.id IN :ids AND u.status <> :status")
+    int updateStatusByIdIn(Collection<Long> ids, BloodUnitStatus status);
 }
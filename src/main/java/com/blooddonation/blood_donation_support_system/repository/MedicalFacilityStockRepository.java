@@ -1,16 +1,19 @@
 package com.blooddonation.blood_donation_support_system.repository;
 
 import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.StockLevelDto;
 import com.blooddonation.blood_donation_support_system.entity.ComponentRequest;
 import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
 import com.blooddonation.blood_donation_support_system.enums.BloodType;
 import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.List;
 
@@ -19,14 +22,19 @@ public interface MedicalFacilityStockRepository extends JpaRepository<MedicalFac
     Optional<MedicalFacilityStock> findByBloodTypeAndComponentType(BloodType bloodType, ComponentType componentType);
     @Query("SELECT m FROM MedicalFacilityStock m WHERE m.expiryDate >= CURRENT_DATE")
     List<MedicalFacilityStock> findAllAvailableBlood();
+    List<MedicalFacilityStock> findByExpiryDateIn(Collection<LocalDate> expiryDates);
     @Query("SELECT m FROM MedicalFacilityStock m WHERE m.bloodType = :bloodType AND m.componentType IN :componentTypes AND m.expiryDate >= CURRENT_DATE")
     List<MedicalFacilityStock> findAvailableBloodByType(BloodType bloodType, List<ComponentType> componentTypes);
     @Query("SELECT m FROM MedicalFacilityStock m WHERE m.bloodType = :bloodType AND m.componentType = :componentType AND m.expiryDate >= CURRENT_DATE")
     List<MedicalFacilityStock> findAvailableBloodByType(BloodType bloodType, ComponentType componentType);
-    @Modifying
-    @Query("UPDATE MedicalFacilityStock s SET s.volume = s.volume - :volume WHERE s.bloodType = :bloodType AND s.componentType = :componentType AND s.volume >= :volume and s.expiryDate >= CURRENT_DATE")
-    int withdrawBloodFromStock(BloodType bloodType, ComponentType componentType, Double volume);
-    @Modifying
-    @Query("UPDATE MedicalFacilityStock s SET s.volume = s.volume + :volume WHERE s.bloodType = :bloodType AND s.componentType = :componentType and s.expiryDate = :expiryDate")
-    int addStock(BloodType bloodType, ComponentType componentType, Double volume, LocalDate expiryDate);
+    @Query("SELECT m FROM MedicalFacilityStock m WHERE m.bloodType = :bloodType AND m.componentType = :componentType AND m.volume > 0 AND m.expiryDate >= CURRENT_DATE ORDER BY m.expiryDate ASC, m.id ASC")
+    List<MedicalFacilityStock> findAvailableLotsByExpiry(BloodType bloodType, ComponentType componentType);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM MedicalFacilityStock m WHERE m.bloodType = :bloodType AND m.componentType = :componentType AND m.volume > 0 AND m.expiryDate >= CURRENT_DATE ORDER BY m.expiryDate ASC, m.id ASC")
+    List<MedicalFacilityStock> lockAvailableLotsByExpiry(BloodType bloodType, ComponentType componentType);
+    @Query("SELECT new com.blooddonation.blood_donation_support_system.dto.StockLevelDto(m.bloodType, m.componentType, SUM(m.volume), MIN(m.expiryDate)) " +
+            "FROM MedicalFacilityStock m WHERE m.expiryDate >= CURRENT_DATE GROUP BY m.bloodType, m.componentType")
+    List<StockLevelDto> findAvailableStockLevels();
+    @Query("SELECT m.bloodType, m.componentType, SUM(m.volume) FROM MedicalFacilityStock m GROUP BY m.bloodType, m.componentType")
+    List<Object[]> sumVolumes();
 }
@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +18,7 @@ public interface ProfileRepository extends JpaRepository<Profile, Long> {
     Optional<Profile> findFirstByPersonalId(String personalId);
     List<Profile> findByNextEligibleDonationDateLessThanEqual(LocalDate date);
     List<Profile> findAllByPersonalId(String personalId);
+    List<Profile> findByPersonalIdIn(Collection<String> personalIds);
     
     // Comprehensive search method
     @Query("SELECT p FROM Profile p WHERE " +
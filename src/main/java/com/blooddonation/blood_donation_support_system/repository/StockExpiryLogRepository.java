@@ -0,0 +1,13 @@
+package com.blooddonation.blood_donation_support_system.repository;
+
+import com.blooddonation.blood_donation_support_system.entity.StockExpiryLog;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockExpiryLogRepository extends JpaRepository<StockExpiryLog, Long> {
+    List<StockExpiryLog> findByRemovedAtGreaterThanEqualOrderByRemovedAtDescIdAsc(LocalDateTime since);
+}
@@ -0,0 +1,31 @@
+package com.blooddonation.blood_donation_support_system.repository;
+
+import com.blooddonation.blood_donation_support_system.entity.StockHold;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StockHoldRepository extends JpaRepository<StockHold, Long> {
+    List<StockHold> findByRequestId(Long requestId);
+    @Query("SELECT h.bloodType, h.componentType, SUM(h.volume) FROM StockHold h GROUP BY h.bloodType, h.componentType")
+    List<Object[]> findHeldVolumes();
+    @Query("SELECT COALESCE(SUM(h.volume), 0) FROM StockHold h WHERE h.bloodType = :bloodType AND h.componentType = :componentType AND h.requestId NOT IN :excludedRequestIds")
+    double sumHeldVolume(BloodType bloodType, ComponentType componentType, Collection<Long> excludedRequestIds);
+    @Modifying
+    @Query("UPDATE StockHold h SET h.expiresAt = :expiresAt WHERE h.requestId = :requestId")
+    int extendHold(Long requestId, LocalDateTime expiresAt);
+    @Modifying
+    @Query("DELETE FROM StockHold h WHERE h.requestId IN :requestIds")
+    int deleteByRequestIds(Collection<Long> requestIds);
+    @Modifying
+    @Query("DELETE FROM StockHold h WHERE h.expiresAt < :now")
+    int deleteExpired(LocalDateTime now);
+}
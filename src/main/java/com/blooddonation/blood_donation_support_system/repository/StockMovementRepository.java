@@ -0,0 +1,19 @@
+package com.blooddonation.blood_donation_support_system.repository;
+
+import com.blooddonation.blood_donation_support_system.entity.StockMovement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+    @Query("SELECT m.bloodType, m.componentType, SUM(m.volume) FROM StockMovement m " +
+            "WHERE m.createdAt >= :from AND m.createdAt < :until GROUP BY m.bloodType, m.componentType")
+    List<Object[]> sumVolumesBetween(LocalDateTime from, LocalDateTime until);
+    @Query("SELECT m.bloodType, m.componentType, SUM(m.volume) FROM StockMovement m " +
+            "WHERE m.createdAt >= :from GROUP BY m.bloodType, m.componentType")
+    List<Object[]> sumVolumesSince(LocalDateTime from);
+}
@@ -0,0 +1,20 @@
+package com.blooddonation.blood_donation_support_system.repository;
+
+import com.blooddonation.blood_donation_support_system.entity.StockSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+    @Query("SELECT s FROM StockSnapshot s WHERE s.coveredUntil = (SELECT MAX(l.coveredUntil) FROM StockSnapshot l)")
+    List<StockSnapshot> findLatest();
+
+    @Modifying
+    @Query("DELETE FROM StockSnapshot s WHERE s.coveredUntil < :cutoff")
+    int deleteCoveredBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,14 @@
+package com.blooddonation.blood_donation_support_system.service;
+
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.DemandForecastDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface DemandForecastService {
+    void recordDemand(Long requestId, BloodType bloodType, List<ComponentRequestDto> componentRequests, LocalDateTime createdTime);
+    List<DemandForecastDto> getForecast();
+    void checkpoint();
+}
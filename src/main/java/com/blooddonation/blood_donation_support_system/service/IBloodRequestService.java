@@ -1,16 +1,25 @@
 package com.blooddonation.blood_donation_support_system.service;
 
 import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestFilterDto;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestPageDto;
 import com.blooddonation.blood_donation_support_system.dto.BloodUnitDto;
+import com.blooddonation.blood_donation_support_system.dto.BulkBloodRequestResultDto;
 import com.blooddonation.blood_donation_support_system.dto.ProfileDto;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Component
 public interface IBloodRequestService {
     BloodRequestDto createBloodRequest(BloodRequestDto bloodRequestDto);
+    List<BulkBloodRequestResultDto> createBloodRequests(List<BloodRequestDto> bloodRequestDtos);
     List<BloodRequestDto> findAllBloodRequest();
+    BloodRequestPageDto findBloodRequests(BloodRequestFilterDto filter, Long after, int size);
+    void exportBloodRequests(LocalDateTime since, OutputStream outputStream) throws IOException;
     BloodRequestDto findBloodRequestById(int id);
     BloodRequestDto addBloodRequestDonor(BloodRequestDto bloodRequestDto, BloodUnitDto bloodUnitDto, ProfileDto profileDto);
     BloodRequestDto fulfillBloodRequest(BloodRequestDto bloodRequestDto);
@@ -2,19 +2,33 @@ package com.blooddonation.blood_donation_support_system.service;
 
 import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
 import com.blooddonation.blood_donation_support_system.dto.MedicalFacilityStockDto;
+import com.blooddonation.blood_donation_support_system.dto.StockLevelDto;
 import com.blooddonation.blood_donation_support_system.enums.BloodType;
 import com.blooddonation.blood_donation_support_system.enums.ComponentType;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 
 
 public interface MedicalFacilityStockService {
     String addBloodUnitsToStockByEventId(Long eventId, String userEmail);
     int withdrawBloodFromStock(BloodRequestDto bloodRequestDto);
-    String updateBeforeWithdraw(String userEmail);
+    boolean tryWithdrawBloodFromStock(BloodRequestDto bloodRequestDto);
+    boolean tryWithdrawBloodFromStock(BloodType bloodType, double[] componentVolumes);
+    double[] getStockSnapshot();
+    boolean holdStock(Long requestId, BloodType bloodType, double[] componentVolumes, Duration ttl);
+    boolean holdStock(Long requestId, double[] demand, Duration ttl);
+    boolean restoreHold(Long requestId, BloodType bloodType, double[] componentVolumes, Duration ttl);
+    boolean transferHolds(Collection<Long> fromRequestIds, Long toRequestId, double[] demand, Duration ttl);
+    boolean commitHold(Long requestId);
+    boolean releaseHold(Long requestId);
+    void forgetHold(Long requestId);
+    double[] getHeldVolumes(Long requestId);
+    String getExpiryReport();
     List<MedicalFacilityStockDto> getAllAvailableBlood();
+    List<StockLevelDto> getStockSummary();
     List<MedicalFacilityStockDto> getAvailableBloodByType(BloodType bloodType, List<ComponentType> componentTypes);
-    int addToStock(BloodRequestDto bloodRequestDto);
     List<MedicalFacilityStockDto> getAvailableBloodByType(BloodType bloodType, ComponentType componentType);
     MedicalFacilityStockDto addBloodIntoStock(MedicalFacilityStockDto medicalFacilityStockDto);
     void deleteStockById(Long id);
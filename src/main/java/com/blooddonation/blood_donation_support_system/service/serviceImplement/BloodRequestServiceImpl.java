@@ -1,30 +1,60 @@
 package com.blooddonation.blood_donation_support_system.service.serviceImplement;
 
+import com.blooddonation.blood_donation_support_system.component.AllocationMetrics;
+import com.blooddonation.blood_donation_support_system.component.AllocationWorkersHealthIndicator;
+import com.blooddonation.blood_donation_support_system.component.BloodRequestLeaseManager;
+import com.blooddonation.blood_donation_support_system.component.BloodRequestQueueLoader;
 import com.blooddonation.blood_donation_support_system.dto.*;
 import com.blooddonation.blood_donation_support_system.entity.BloodRequest;
 import com.blooddonation.blood_donation_support_system.entity.Profile;
 import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
 import com.blooddonation.blood_donation_support_system.enums.ComponentType;
 import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import com.blooddonation.blood_donation_support_system.event.StockChangedEvent;
+import com.blooddonation.blood_donation_support_system.event.StockHoldShortenedEvent;
 import com.blooddonation.blood_donation_support_system.mapper.BloodRequestMapper;
 import com.blooddonation.blood_donation_support_system.mapper.ProfileMapper;
 import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
 import com.blooddonation.blood_donation_support_system.repository.ProfileRepository;
+import com.blooddonation.blood_donation_support_system.service.DemandForecastService;
 import com.blooddonation.blood_donation_support_system.service.IBloodRequestService;
 import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
+import com.blooddonation.blood_donation_support_system.util.AllocationPolicy;
+import com.blooddonation.blood_donation_support_system.util.CompatibleStockAllocator;
+import com.blooddonation.blood_donation_support_system.util.IndexedPriorityQueue;
+import com.blooddonation.blood_donation_support_system.util.QueueEntry;
+import com.blooddonation.blood_donation_support_system.util.ReservedVolumeIndex;
+import com.blooddonation.blood_donation_support_system.validator.BloodRequestValidator;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class BloodRequestServiceImpl implements IBloodRequestService {
     @Autowired
     private BloodRequestRepository bloodRequestRepository;
@@ -34,38 +64,94 @@ public class BloodRequestServiceImpl implements IBloodRequestService {
     private MedicalFacilityStockService medicalFacilityStockService;
     @Autowired
     private ProfileServiceImpl profileService;
-    private final PriorityBlockingQueue<BloodRequestDto> bloodRequestQueue;
-    private final PriorityBlockingQueue<BloodRequestDto> pendingRequestQueue;
-    private final int HIGH_URGENCY_DELAY = 0;
-    private final int MEDIUM_URGENCY_DELAY = 1;
-    private final int LOW_URGENCY_DELAY = 2;
+    @Autowired
+    private BloodRequestQueueLoader bloodRequestQueueLoader;
+    @Autowired
+    private BloodRequestLeaseManager leaseManager;
+    @Autowired
+    private BloodRequestValidator bloodRequestValidator;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private AllocationMetrics allocationMetrics;
+    @Autowired
+    private DemandForecastService demandForecastService;
+    @Autowired
+    private AllocationWorkersHealthIndicator allocationWorkersHealth;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Value("${stock.hold.grace-minutes:10}")
+    private long holdGraceMinutes;
+    // Whether requests may be served from ABO/Rh-compatible blood types other than their own
+    @Value("${blood-request.allocation.cross-type:true}")
+    private boolean crossTypeAllocation;
+    private final IndexedPriorityQueue<QueueEntry> bloodRequestQueue;
+    private final IndexedPriorityQueue<QueueEntry> pendingRequestQueue;
+    private final ReservedVolumeIndex reservedVolumeIndex = new ReservedVolumeIndex();
+    private final BlockingQueue<StockChangedEvent> stockChanges = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Long> shortenedHolds = new LinkedBlockingQueue<>();
+    // Requests sent back to pending after reaching processing; their wait was recorded the first time
+    private final Set<Long> processingReentries = ConcurrentHashMap.newKeySet();
+    private final DelayQueue<FulfillmentTimer> fulfillmentTimers = new DelayQueue<>();
+    private final ExecutorService workerExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("blood-request-worker-", 0).factory());
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int EXPORT_FLUSH_ROWS = 500;
 
     public BloodRequestServiceImpl() {
-        Comparator<BloodRequestDto> comparator = Comparator
-                .comparingInt(BloodRequestDto::calculatePriority).reversed()
-                .thenComparing(BloodRequestDto::getCreatedTime);
+        this.bloodRequestQueue = new IndexedPriorityQueue<>(QueueEntry.PRIORITY_ORDER, QueueEntry::getId,
+                QueueEntry.URGENCY_BUCKET, Urgency.values().length);
+        this.pendingRequestQueue = new IndexedPriorityQueue<>(QueueEntry.PRIORITY_ORDER, QueueEntry::getId,
+                QueueEntry.URGENCY_BUCKET, Urgency.values().length);
+    }
 
-        this.bloodRequestQueue = new PriorityBlockingQueue<>(11, comparator);
-        this.pendingRequestQueue = new PriorityBlockingQueue<>(11, comparator);
+    @PostConstruct
+    public void registerQueueMetrics() {
+        allocationMetrics.registerQueue("processing", bloodRequestQueue);
+        allocationMetrics.registerQueue("pending", pendingRequestQueue);
     }
 
     @PostConstruct
-    @Transactional(readOnly = true)
     public void initQueues() {
-        List<BloodRequest> allRequests = bloodRequestRepository.findAllWithComponents();
-        for (BloodRequest request : allRequests) {
-            BloodRequestDto dto = BloodRequestMapper.toBloodRequestDto(request);
-            if (dto.getStatus() == BloodRequestStatus.PROCESSING && dto.isAutomation()) {
-                bloodRequestQueue.add(dto);
-            } else if (dto.getStatus() == BloodRequestStatus.PENDING && dto.isAutomation()) {
-                pendingRequestQueue.add(dto);
+        // In cluster mode the queues only cache work this node has claimed, see claimWork()
+        if (leaseManager.isEnabled()) return;
+        bloodRequestQueueLoader.load(this::enqueueLoaded);
+    }
+
+    /**
+     * Cluster mode only: renews this node's leases and claims unleased or expired requests into
+     * the local queues.
+     */
+    @Scheduled(fixedDelayString = "${blood-request.cluster.claim-interval-ms:15000}")
+    public void claimWork() {
+        if (!leaseManager.isEnabled()) return;
+        leaseManager.renew();
+        List<Long> claimed = leaseManager.claim();
+        if (bloodRequestQueueLoader.loadByIds(claimed, this::enqueueLoaded) > 0) {
+            // Claimed pending requests may already be satisfiable
+            for (ComponentType componentType : ComponentType.values()) {
+                for (BloodType bloodType : BloodType.values()) {
+                    stockChanges.offer(new StockChangedEvent(bloodType, componentType));
+                }
             }
         }
     }
 
+    private void enqueueLoaded(BloodRequestStatus status, QueueEntry entry) {
+        if (status == BloodRequestStatus.PROCESSING && medicalFacilityStockService.restoreHold(
+                entry.getId(), entry.getBloodType(), entry.getComponentVolumes(), holdTtl(entry))) {
+            addToProcessingQueue(entry);
+        } else if (status == BloodRequestStatus.PROCESSING) {
+            returnToPending(entry);
+        } else {
+            pendingRequestQueue.offer(entry);
+        }
+    }
+
     @Override
     @Transactional
     public BloodRequestDto createBloodRequest(BloodRequestDto bloodRequestDto) {
+        bloodRequestValidator.validateNewBloodRequest(bloodRequestDto);
         if (bloodRequestDto.getCreatedTime() == null) {
             bloodRequestDto.setCreatedTime(LocalDateTime.now());
         }
@@ -78,40 +164,136 @@ public class BloodRequestServiceImpl implements IBloodRequestService {
             profile = ProfileMapper.toEntity(profileService.saveProfile(bloodRequestDto.getProfile()));
         }
 
-        BloodRequest savedEntity = bloodRequestRepository.save(BloodRequestMapper.toBloodRequestEntity(bloodRequestDto, profile));
+        BloodRequest newEntity = BloodRequestMapper.toBloodRequestEntity(bloodRequestDto, profile);
+        leaseManager.stamp(newEntity);
+        BloodRequest savedEntity = bloodRequestRepository.save(newEntity);
         BloodRequestDto bloodRequest = BloodRequestMapper.toBloodRequestDto(savedEntity);
+        afterCommit(() -> demandForecastService.recordDemand(bloodRequest.getId(),
+                bloodRequest.getBloodType(), bloodRequest.getComponentRequests(), bloodRequest.getCreatedTime()));
         if(!bloodRequest.isAutomation()) return bloodRequest;
-        int newPriority = bloodRequest.calculatePriority();
+        QueueEntry entry = QueueEntry.of(bloodRequest);
         boolean isHighPriority = bloodRequest.getUrgency() == Urgency.HIGH;
-        List<ComponentType> componentTypes = bloodRequest.getComponentRequests()
-                .stream().map(ComponentRequestDto::getComponentType).collect(Collectors.toList());
-        List<MedicalFacilityStockDto> stockDtos = medicalFacilityStockService
-                .getAvailableBloodByType(bloodRequestDto.getBloodType(), componentTypes);
-        boolean isStockAvailable = true;
-        for (ComponentRequestDto compReq : bloodRequest.getComponentRequests()) {
-            MedicalFacilityStockDto stock = stockDtos.stream()
-                    .filter(s -> s.getComponentType() == compReq.getComponentType())
-                    .findFirst().orElse(null);
-            if (stock == null || stock.getVolume() < compReq.getVolume()) {
-                isStockAvailable = false;
-                break;
-            }
-        }
+        double[] demand = CompatibleStockAllocator.allocate(
+                entry, medicalFacilityStockService.getStockSnapshot(), crossTypeAllocation);
+        boolean isStockAvailable = demand != null
+                && medicalFacilityStockService.holdStock(entry.getId(), demand, holdTtl(entry));
+        if (!isStockAvailable) allocationMetrics.recordStockMiss("intake");
+        BloodRequestStatus status;
         if (!isStockAvailable && isHighPriority) {
-            return handleHighPriorityRequest(bloodRequest, stockDtos, newPriority);
+            status = handleHighPriorityRequest(entry);
         } else if (!isStockAvailable) {
-            bloodRequest.setStatus(BloodRequestStatus.PENDING);
-            pendingRequestQueue.add(bloodRequest);
-            updateBloodRequestStatus(bloodRequest.getId(), BloodRequestStatus.PENDING);
-            return bloodRequest;
-        }
-        bloodRequest.setStatus(BloodRequestStatus.PROCESSING);
-        medicalFacilityStockService.withdrawBloodFromStock(bloodRequest);
-        bloodRequestQueue.add(bloodRequest);
-        updateBloodRequestStatus(bloodRequest.getId(), BloodRequestStatus.PROCESSING);
+            status = moveToPending(entry);
+        } else {
+            status = moveToProcessing(entry);
+        }
+        bloodRequest.setStatus(status);
         return bloodRequest;
     }
 
+    /**
+     * Bulk intake: validates every item, resolves profiles with one query, inserts the accepted
+     * requests in one flush and allocates them against a single stock snapshot in priority order.
+     * Inline profiles are checked for taken personal ids with one query and saved together.
+     * Status changes are made on the managed entities and written once at commit. Items that fail
+     * validation are reported and skipped, they do not fail the batch.
+     */
+    @Override
+    @Transactional
+    public List<BulkBloodRequestResultDto> createBloodRequests(List<BloodRequestDto> bloodRequestDtos) {
+        BulkBloodRequestResultDto[] results = new BulkBloodRequestResultDto[bloodRequestDtos.size()];
+        Set<Long> profileIds = bloodRequestDtos.stream()
+                .filter(dto -> dto != null && dto.getProfile() == null && dto.getProfileId() != null)
+                .map(BloodRequestDto::getProfileId)
+                .collect(Collectors.toSet());
+        Map<Long, Profile> profiles = profileRepository.findAllById(profileIds).stream()
+                .collect(Collectors.toMap(Profile::getId, profile -> profile));
+        Set<String> personalIds = bloodRequestDtos.stream()
+                .filter(dto -> dto != null && dto.getProfile() != null && dto.getProfile().getPersonalId() != null)
+                .map(dto -> dto.getProfile().getPersonalId())
+                .collect(Collectors.toSet());
+        Set<String> takenPersonalIds = profileRepository.findByPersonalIdIn(personalIds).stream()
+                .map(Profile::getPersonalId)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        List<Integer> accepted = new ArrayList<>();
+        List<BloodRequest> entities = new ArrayList<>();
+        List<Profile> newProfiles = new ArrayList<>();
+        for (int i = 0; i < bloodRequestDtos.size(); i++) {
+            BloodRequestDto dto = bloodRequestDtos.get(i);
+            try {
+                bloodRequestValidator.validateNewBloodRequest(dto);
+                Profile profile;
+                if (dto.getProfile() != null) {
+                    String personalId = dto.getProfile().getPersonalId();
+                    if (personalId != null && !takenPersonalIds.add(personalId)) {
+                        throw new RuntimeException("Personal ID already exists");
+                    }
+                    profile = ProfileMapper.toEntity(dto.getProfile());
+                    newProfiles.add(profile);
+                } else {
+                    profile = profiles.get(dto.getProfileId());
+                }
+                if (profile == null) {
+                    throw new EntityNotFoundException("Profile not found with ID: " + dto.getProfileId());
+                }
+                if (dto.getCreatedTime() == null) {
+                    dto.setCreatedTime(LocalDateTime.now());
+                }
+                dto.setStatus(BloodRequestStatus.PENDING);
+                BloodRequest entity = BloodRequestMapper.toBloodRequestEntity(dto, profile);
+                leaseManager.stamp(entity);
+                entities.add(entity);
+                accepted.add(i);
+            } catch (RuntimeException e) {
+                results[i] = BulkBloodRequestResultDto.builder().index(i).success(false).error(e.getMessage()).build();
+            }
+        }
+        profileRepository.saveAll(newProfiles);
+        List<BloodRequest> saved = bloodRequestRepository.saveAll(entities);
+        List<BloodRequestDto> savedDtos = saved.stream().map(BloodRequestMapper::toBloodRequestDto).toList();
+        afterCommit(() -> savedDtos.forEach(dto -> demandForecastService.recordDemand(
+                dto.getId(), dto.getBloodType(), dto.getComponentRequests(), dto.getCreatedTime())));
+
+        // One snapshot for the whole batch, allocated highest priority first
+        Map<Long, BloodRequest> automated = new HashMap<>();
+        List<QueueEntry> entries = new ArrayList<>();
+        for (int k = 0; k < saved.size(); k++) {
+            BloodRequest entity = saved.get(k);
+            if (!entity.isAutomation()) continue;
+            automated.put(entity.getId(), entity);
+            entries.add(QueueEntry.of(savedDtos.get(k)));
+        }
+        entries.sort(QueueEntry.PRIORITY_ORDER);
+        double[] available = medicalFacilityStockService.getStockSnapshot();
+        for (QueueEntry entry : entries) {
+            double[] demand = CompatibleStockAllocator.allocate(entry, available, crossTypeAllocation);
+            if (demand != null && medicalFacilityStockService.holdStock(entry.getId(), demand, holdTtl(entry))) {
+                addToProcessingQueue(entry);
+                allocationMetrics.recordWait(AllocationMetrics.PROCESSING, entry);
+                automated.get(entry.getId()).setStatus(BloodRequestStatus.PROCESSING);
+                continue;
+            }
+            allocationMetrics.recordStockMiss("bulk-intake");
+            if (entry.getUrgency() == Urgency.HIGH) {
+                automated.get(entry.getId()).setStatus(handleHighPriorityRequest(entry));
+                available = medicalFacilityStockService.getStockSnapshot();
+            } else {
+                if (demand != null) available = medicalFacilityStockService.getStockSnapshot();
+                afterCommit(() -> pendingRequestQueue.offer(entry));
+            }
+        }
+
+        for (int k = 0; k < saved.size(); k++) {
+            int index = accepted.get(k);
+            results[index] = BulkBloodRequestResultDto.builder()
+                    .index(index)
+                    .success(true)
+                    .bloodRequest(BloodRequestMapper.toBloodRequestDto(saved.get(k)))
+                    .build();
+        }
+        return Arrays.asList(results);
+    }
+
 
     @Override
     @Transactional(readOnly = true)
@@ -121,6 +303,56 @@ public class BloodRequestServiceImpl implements IBloodRequestService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Keyset page: one projection query for the requests and one for their component requests.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public BloodRequestPageDto findBloodRequests(BloodRequestFilterDto filter, Long after, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // One extra row tells whether there is a next page
+        List<BloodRequestSummaryDto> items = bloodRequestRepository.findSummaries(filter, after, limit + 1);
+        boolean hasMore = items.size() > limit;
+        if (hasMore) items = new ArrayList<>(items.subList(0, limit));
+        if (!items.isEmpty()) {
+            Map<Long, BloodRequestSummaryDto> byId = new HashMap<>();
+            for (BloodRequestSummaryDto item : items) byId.put(item.getId(), item);
+            for (ComponentRequestDto componentRequest : bloodRequestRepository.findComponentRequestsByRequestIds(byId.keySet())) {
+                byId.get(componentRequest.getRequest_id()).getComponentRequests().add(componentRequest);
+            }
+        }
+        return BloodRequestPageDto.builder()
+                .items(items)
+                .nextCursor(hasMore ? items.get(items.size() - 1).getId() : null)
+                .build();
+    }
+
+    /**
+     * Writes every blood request created at or after {@code since} (all when null) as one JSON
+     * object per line, in id order. Requests are read a page of ids at a time with their profile,
+     * components and units fetched for the whole page, and the persistence context is cleared
+     * after each page, so memory stays flat however many rows there are.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportBloodRequests(LocalDateTime since, OutputStream outputStream) throws IOException {
+        Limit page = Limit.of(EXPORT_FLUSH_ROWS);
+        Long afterId = 0L;
+        while (true) {
+            List<Long> ids = since != null
+                    ? bloodRequestRepository.findExportIdsCreatedSinceAfter(afterId, since, page)
+                    : bloodRequestRepository.findExportIdsAfter(afterId, page);
+            if (ids.isEmpty()) break;
+            for (BloodRequest bloodRequest : bloodRequestRepository.findAllForExport(ids)) {
+                outputStream.write(objectMapper.writeValueAsBytes(BloodRequestMapper.toBloodRequestDto(bloodRequest)));
+                outputStream.write('\n');
+            }
+            outputStream.flush();
+            entityManager.clear();
+            afterId = ids.get(ids.size() - 1);
+        }
+    }
+
     @Override
     @Transactional(readOnly = true)
     public BloodRequestDto findBloodRequestById(int id) {
@@ -152,9 +384,16 @@ public class BloodRequestServiceImpl implements IBloodRequestService {
 
     @Override
     public BloodRequestDto fulfillBloodRequest(BloodRequestDto bloodRequestDto) {
+        if (bloodRequestDto.getStatus() != BloodRequestStatus.FULFILLED && bloodRequestDto.getCreatedTime() != null) {
+            allocationMetrics.recordWait(AllocationMetrics.FULFILLED, bloodRequestDto.getUrgency(),
+                    Duration.between(bloodRequestDto.getCreatedTime(), LocalDateTime.now()));
+        }
         bloodRequestDto.setStatus(BloodRequestStatus.FULFILLED);
-        bloodRequestQueue.remove(bloodRequestDto);
-        pendingRequestQueue.remove(bloodRequestDto);
+        if (removeFromProcessingQueue(bloodRequestDto.getId()) != null) {
+            medicalFacilityStockService.commitHold(bloodRequestDto.getId());
+        }
+        pendingRequestQueue.remove(bloodRequestDto.getId());
+        processingReentries.remove(bloodRequestDto.getId());
         
         // Get the profile for the blood request
         Profile profile = profileRepository.findById(bloodRequestDto.getProfileId())
@@ -164,169 +403,322 @@ public class BloodRequestServiceImpl implements IBloodRequestService {
         return BloodRequestMapper.toBloodRequestDto(bloodRequest);
     }
 
+    /**
+     * Fulfills processing requests as their deadlines come due. The DelayQueue wakes the worker
+     * exactly at the earliest deadline, and again whenever an earlier one is inserted; timers of
+     * requests that already left the processing queue are skipped. A request whose hold expired
+     * is withdrawn directly if stock allows and otherwise goes back to pending.
+     */
     @PostConstruct
-    @Transactional
     public void availableQueueWorker() {
-        Thread worker = new Thread(() -> {
+        Timer iterationTimer = allocationMetrics.workerIterationTimer("fulfillment");
+        allocationWorkersHealth.register("fulfillmentWorker", workerExecutor.submit(() -> {
             while (true) {
                 try {
-                    BloodRequestDto request = bloodRequestQueue.peek();
-                    if (request == null) {
-                        Thread.sleep(60 * 1000);
-                        continue;
-                    }
-                    int delay = getDelayMinutes(request.getUrgency());
-                    long waited = Duration.between(request.getCreatedTime(), LocalDateTime.now()).toMinutes();
-                    if (waited >= delay) {
-                        bloodRequestQueue.poll();
-                        fulfillBloodRequest(request.getId());
+                    FulfillmentTimer timer = fulfillmentTimers.take();
+                    long started = System.nanoTime();
+                    QueueEntry entry = removeFromProcessingQueue(timer.getRequestId());
+                    if (entry == null) continue;
+                    BloodRequestStatus outcome = fulfillFromStock(entry);
+                    if (outcome == BloodRequestStatus.FULFILLED) {
+                        allocationMetrics.recordWait(AllocationMetrics.FULFILLED, entry);
+                    } else if (outcome == BloodRequestStatus.PENDING) {
+                        allocationMetrics.recordStockMiss("fulfillment");
+                        returnToPending(entry);
                     } else {
-                        // Need to fix this
-                        Thread.sleep(1000 * Math.max(1, delay - waited));
+                        // Another node owns this request now; leave its hold to the new owner
+                        pendingRequestQueue.remove(entry.getId());
+                        medicalFacilityStockService.forgetHold(entry.getId());
                     }
+                    iterationTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
+                } catch (RuntimeException e) {
+                    log.error("Fulfillment worker failed, continuing with the next request", e);
                 }
             }
-        });
-        worker.setDaemon(true);
-        worker.start();
+        }));
+    }
+
+    /**
+     * Hands stock changes to the pending worker once the stock write has committed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        stockChanges.offer(event);
+    }
+
+    /**
+     * Hands a request whose hold lost volume to the pending worker. The ledger has already taken
+     * the volume out whether or not the caller's transaction commits, so this does not wait for it.
+     */
+    @EventListener
+    public void onHoldShortened(StockHoldShortenedEvent event) {
+        shortenedHolds.offer(event.getRequestId());
+        stockChanges.offer(new StockChangedEvent(event.getBloodType(), event.getComponentType()));
     }
 
     @PostConstruct
-    @Transactional
     public void pendingQueueWorker() {
-        Thread worker = new Thread(() -> {
+        Timer iterationTimer = allocationMetrics.workerIterationTimer("pending");
+        allocationWorkersHealth.register("pendingWorker", workerExecutor.submit(() -> {
             while (true) {
                 try {
-                    List<BloodRequestDto> toProcess = new ArrayList<>();
-                    List<BloodRequestDto> pendingList = new ArrayList<>(pendingRequestQueue);
-
-                    for (BloodRequestDto request : pendingList) {
-                        List<ComponentType> componentTypes = request.getComponentRequests()
-                                .stream().map(ComponentRequestDto::getComponentType).collect(Collectors.toList());
-                        List<MedicalFacilityStockDto> stockDtos = medicalFacilityStockService
-                                .getAvailableBloodByType(request.getBloodType(), componentTypes);
-
-                        boolean isStockAvailable = true;
-                        for (ComponentRequestDto compReq : request.getComponentRequests()) {
-                            MedicalFacilityStockDto stock = stockDtos.stream()
-                                    .filter(s -> s.getComponentType() == compReq.getComponentType())
-                                    .findFirst().orElse(null);
-                            if (stock == null || stock.getVolume() < compReq.getVolume()) {
-                                isStockAvailable = false;
-                                break;
-                            }
-                        }
-                        if(request.getUrgency().equals(Urgency.HIGH) && !isStockAvailable) {
-                            handleHighPriorityRequest(request, stockDtos, request.calculatePriority());
-                            continue;
-                        }
-                        if (isStockAvailable) {
-                            medicalFacilityStockService.withdrawBloodFromStock(request);
-                            toProcess.add(request);
-                        }
+                    // Block until stock changes, then coalesce everything that arrived meanwhile
+                    List<StockChangedEvent> events = new ArrayList<>();
+                    events.add(stockChanges.take());
+                    long started = System.nanoTime();
+                    stockChanges.drainTo(events);
+                    int[] changedDonors = new int[ComponentType.values().length];
+                    for (StockChangedEvent event : events) {
+                        changedDonors[event.getComponentType().ordinal()] |= 1 << event.getBloodType().ordinal();
                     }
+                    requeueShortenedHolds();
 
-                    for (BloodRequestDto request : toProcess) {
-                        if (pendingRequestQueue.remove(request)) {
-                            processPendingRequest(request.getId());
+                    // One stock read per tick. The whole pending set is allocated against it in
+                    // priority order, across compatible blood types, debiting it as it goes
+                    double[] available = medicalFacilityStockService.getStockSnapshot();
+                    for (QueueEntry request : pendingRequestQueue.toSortedList()) {
+                        if (!CompatibleStockAllocator.isAffectedBy(request, changedDonors, crossTypeAllocation)) continue;
+                        double[] demand = CompatibleStockAllocator.allocate(request, available, crossTypeAllocation);
+                        if (demand != null && !medicalFacilityStockService.holdStock(request.getId(), demand, holdTtl(request))) {
+                            // The snapshot was stale; retry this request against a fresh read before moving on
+                            available = medicalFacilityStockService.getStockSnapshot();
+                            demand = CompatibleStockAllocator.allocate(request, available, crossTypeAllocation);
+                            if (demand != null && !medicalFacilityStockService.holdStock(request.getId(), demand, holdTtl(request))) {
+                                // Lost the race twice; the next stock change brings it round again
+                                available = medicalFacilityStockService.getStockSnapshot();
+                                continue;
+                            }
+                        }
+                        if (demand != null) {
+                            moveToProcessing(request);
+                        } else {
+                            allocationMetrics.recordStockMiss("pending");
+                            if (request.getUrgency() == Urgency.HIGH) {
+                                handleHighPriorityRequest(request);
+                                // Preemption moves stock around, so start again from a fresh read
+                                available = medicalFacilityStockService.getStockSnapshot();
+                            }
                         }
                     }
-                    Thread.sleep(60 * 1000); // Sleep for 1 minutes
+                    iterationTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
+                } catch (RuntimeException e) {
+                    log.error("Pending worker failed, continuing with the next stock change", e);
                 }
             }
+        }));
+    }
+
+    /**
+     * Moves processing requests whose holds lost volume with an expired or deleted lot back to
+     * pending, releasing what is left of the hold, so they are allocated again like any other.
+     * The lost lot's cell is among the changed donors, so they are retried in the same tick.
+     */
+    private void requeueShortenedHolds() {
+        List<Long> shortened = new ArrayList<>();
+        shortenedHolds.drainTo(shortened);
+        for (Long requestId : shortened) {
+            // Already fulfilled, bumped or reopened by the fulfillment worker
+            QueueEntry entry = removeFromProcessingQueue(requestId);
+            if (entry == null) continue;
+            log.info("Blood request {} lost held stock with an expired or deleted lot, moving it back to pending", requestId);
+            medicalFacilityStockService.releaseHold(requestId);
+            returnToPending(entry);
+        }
+    }
+
+    @PreDestroy
+    public void stopWorkers() {
+        workerExecutor.shutdownNow();
+    }
+
+    private void addToProcessingQueue(QueueEntry entry) {
+        afterCommit(() -> {
+            synchronized (bloodRequestQueue) {
+                bloodRequestQueue.offer(entry);
+                reservedVolumeIndex.add(entry, medicalFacilityStockService.getHeldVolumes(entry.getId()));
+            }
+            fulfillmentTimers.add(new FulfillmentTimer(entry.getId(), AllocationPolicy.fulfillmentDeadline(entry)));
         });
-        worker.setDaemon(true);
-        worker.start();
     }
 
-    private int getDelayMinutes(Urgency urgency) {
-        switch (urgency) {
-            case LOW:
-                return LOW_URGENCY_DELAY;
-            case MEDIUM:
-                return MEDIUM_URGENCY_DELAY;
-            case HIGH:
-                return HIGH_URGENCY_DELAY;
-            default:
-                throw new IllegalArgumentException("Unknown urgency");
+    /**
+     * Queue changes made inside a transaction only reach the workers once it commits, so they
+     * never act on a request row other transactions cannot see yet. On rollback the change is
+     * dropped; a hold taken for it lapses with its TTL.
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
-    @Transactional
-    public void fulfillBloodRequest(Long requestId) {
-        BloodRequest bloodRequest = bloodRequestRepository.findById(requestId)
-                .orElseThrow(() -> new EntityNotFoundException("BloodRequest not found"));
-        bloodRequest.setStatus(BloodRequestStatus.FULFILLED);
-        bloodRequestRepository.save(bloodRequest);
+    private QueueEntry removeFromProcessingQueue(Long requestId) {
+        synchronized (bloodRequestQueue) {
+            QueueEntry removed = bloodRequestQueue.remove(requestId);
+            if (removed != null) reservedVolumeIndex.remove(requestId);
+            return removed;
+        }
     }
 
-    @Transactional
-    public void processPendingRequest(Long requestId) {
-        BloodRequest bloodRequest = bloodRequestRepository.findById(requestId)
-                .orElseThrow(() -> new EntityNotFoundException("BloodRequest not found"));
-        bloodRequest.setStatus(BloodRequestStatus.PROCESSING);
-        bloodRequestRepository.save(bloodRequest);
-        bloodRequestQueue.add(BloodRequestMapper.toBloodRequestDto(bloodRequest));
+    /**
+     * Takes the stock of a due processing request and marks it FULFILLED. In cluster mode the status
+     * moves first, under the lease: a FULFILLED request can no longer be claimed, so stock is only
+     * ever committed by the node that owns the request. When the stock then falls short the request
+     * is reopened as PENDING.
+     *
+     * @return FULFILLED, PENDING when the stock fell short, or null when the lease was lost
+     */
+    private BloodRequestStatus fulfillFromStock(QueueEntry entry) {
+        Long requestId = entry.getId();
+        boolean clustered = leaseManager.isEnabled();
+        if (clustered && !leaseManager.transition(requestId, BloodRequestStatus.FULFILLED)) {
+            return null;
+        }
+        if (medicalFacilityStockService.commitHold(requestId)
+                || medicalFacilityStockService.tryWithdrawBloodFromStock(entry.getBloodType(), entry.getComponentVolumes())) {
+            if (!clustered && bloodRequestRepository.updateStatus(requestId, BloodRequestStatus.FULFILLED) == 0) {
+                throw new EntityNotFoundException("BloodRequest not found");
+            }
+            return BloodRequestStatus.FULFILLED;
+        }
+        if (clustered && !leaseManager.reopen(requestId)) {
+            log.warn("Blood request {} was marked fulfilled without stock and could not be reopened", requestId);
+            return null;
+        }
+        return BloodRequestStatus.PENDING;
     }
 
+    /**
+     * @return false when another node owns the request now, in which case this node stops tracking it
+     */
     @Transactional
-    public void updateBloodRequestStatus(Long requestId, BloodRequestStatus status) {
-        BloodRequest bloodRequest = bloodRequestRepository.findById(requestId)
-                .orElseThrow(() -> new EntityNotFoundException("BloodRequest not found"));
-        bloodRequest.setStatus(status);
-        bloodRequestRepository.save(bloodRequest);
+    public boolean updateBloodRequestStatus(Long requestId, BloodRequestStatus status) {
+        if (leaseManager.isEnabled()) {
+            if (!leaseManager.transition(requestId, status)) {
+                // Another node owns this request now; stop tracking it here and leave its hold to the new owner
+                removeFromProcessingQueue(requestId);
+                pendingRequestQueue.remove(requestId);
+                processingReentries.remove(requestId);
+                medicalFacilityStockService.forgetHold(requestId);
+                return false;
+            }
+            return true;
+        }
+        if (bloodRequestRepository.updateStatus(requestId, status) == 0) {
+            throw new EntityNotFoundException("BloodRequest not found");
+        }
+        return true;
     }
 
+    /**
+     * Preempts lower-priority processing requests holding the cells {@code entry} needs when that
+     * frees enough volume for it. Its demand is allocated across compatible types over unheld and
+     * lower-priority held volume, a prefix-sum lookup per cell; only when that fits are the
+     * lowest-priority requests bumped, and only as many as the shortfall needs. Their holds are
+     * transferred to {@code entry} in one step, so no stock row is written.
+     */
     @Transactional
-    public BloodRequestDto handleHighPriorityRequest(BloodRequestDto bloodRequestDto, List<MedicalFacilityStockDto> stockDtos,
-                                                     int newPriority) {
-        List<BloodRequestDto> lowerPriorityRequests = bloodRequestQueue.stream()
-                .filter(r -> r.calculatePriority() < newPriority)
-                .collect(Collectors.toList());
+    public BloodRequestStatus handleHighPriorityRequest(QueueEntry entry) {
+        double[] available = medicalFacilityStockService.getStockSnapshot();
+        double[] demand = AllocationPolicy.preemptionDemand(entry, cell -> available[cell],
+                reservedVolumeIndex, crossTypeAllocation);
+        List<QueueEntry> bumped = demand == null ? null : AllocationPolicy.preemptionVictims(entry, demand,
+                bloodRequestQueue.toSortedList(), cell -> available[cell], reservedVolumeIndex);
+        if (bumped == null) {
+            allocationMetrics.recordPreemption("infeasible", 0);
+            return moveToPending(entry);
+        }
 
-        for (ComponentRequestDto compReq : bloodRequestDto.getComponentRequests()) {
-            double reserved = lowerPriorityRequests.stream()
-                    .flatMap(r -> r.getComponentRequests().stream())
-                    .filter(r -> r.getComponentType() == compReq.getComponentType())
-                    .mapToDouble(ComponentRequestDto::getVolume)
-                    .sum();
-
-            MedicalFacilityStockDto stock = stockDtos.stream()
-                    .filter(s -> s.getComponentType() == compReq.getComponentType())
-                    .findFirst().orElse(null);
-
-            double available = (stock != null ? stock.getVolume() : 0) + reserved;
-            if (available < compReq.getVolume()) {
-                if (!pendingRequestQueue.contains(bloodRequestDto)){
-                    bloodRequestDto.setStatus(BloodRequestStatus.PENDING);
-                    pendingRequestQueue.add(bloodRequestDto);
-                    updateBloodRequestStatus(bloodRequestDto.getId(), BloodRequestStatus.PENDING);
-                    return bloodRequestDto;
-                }
-            return bloodRequestDto;
-            }
+        List<Long> bumpedIds = bumped.stream().map(QueueEntry::getId).toList();
+        if (!medicalFacilityStockService.transferHolds(bumpedIds, entry.getId(), demand, holdTtl(entry))) {
+            allocationMetrics.recordPreemption("transfer-failed", 0);
+            return moveToPending(entry);
         }
+        allocationMetrics.recordPreemption("preempted", bumped.size());
+        for (QueueEntry lower : bumped) {
+            if (removeFromProcessingQueue(lower.getId()) != null) returnToPending(lower);
+        }
+        return moveToProcessing(entry);
+    }
 
-        // Move lower-priority requests to pending and return their reserved blood to stock
-        for (BloodRequestDto lower : lowerPriorityRequests) {
-            if (bloodRequestQueue.remove(lower)) {
-                medicalFacilityStockService.addToStock(lower); // Return reserved blood
-                lower.setStatus(BloodRequestStatus.PENDING);
-                pendingRequestQueue.add(lower);
-                updateBloodRequestStatus(lower.getId(), BloodRequestStatus.PENDING);
-            }
+    // The status is written before the queue changes: once a request is visible in a queue, another
+    // thread may move it on, and a status write landing after that would contradict the queue
+    private BloodRequestStatus moveToPending(QueueEntry entry) {
+        if (!pendingRequestQueue.contains(entry.getId())
+                && updateBloodRequestStatus(entry.getId(), BloodRequestStatus.PENDING)) {
+            afterCommit(() -> pendingRequestQueue.offer(entry));
         }
+        return BloodRequestStatus.PENDING;
+    }
 
-        medicalFacilityStockService.withdrawBloodFromStock(bloodRequestDto);
-        bloodRequestDto.setStatus(BloodRequestStatus.PROCESSING);
-        bloodRequestQueue.add(bloodRequestDto);
-        updateBloodRequestStatus(bloodRequestDto.getId(), BloodRequestStatus.PROCESSING);
-        return bloodRequestDto;
+    // Marked before the move, so a lease lost on the way clears the mark again
+    private BloodRequestStatus returnToPending(QueueEntry entry) {
+        processingReentries.add(entry.getId());
+        return moveToPending(entry);
+    }
+
+    private BloodRequestStatus moveToProcessing(QueueEntry entry) {
+        pendingRequestQueue.remove(entry.getId());
+        if (!processingReentries.remove(entry.getId())) {
+            allocationMetrics.recordWait(AllocationMetrics.PROCESSING, entry);
+        }
+        if (updateBloodRequestStatus(entry.getId(), BloodRequestStatus.PROCESSING)) addToProcessingQueue(entry);
+        return BloodRequestStatus.PROCESSING;
+    }
+
+    // Holds last until the fulfillment deadline plus a grace period
+    private Duration holdTtl(QueueEntry entry) {
+        long untilDeadline = AllocationPolicy.fulfillmentDeadline(entry) - System.currentTimeMillis();
+        return Duration.ofMillis(Math.max(0, untilDeadline)).plusMinutes(holdGraceMinutes);
+    }
+    // Snapshots for tests checking the workers' invariants
+    Set<Long> processingQueueIds() {
+        return bloodRequestQueue.toList().stream().map(QueueEntry::getId).collect(Collectors.toSet());
+    }
+
+    Set<Long> pendingQueueIds() {
+        return pendingRequestQueue.toList().stream().map(QueueEntry::getId).collect(Collectors.toSet());
+    }
+
+    boolean hasQueuedStockChanges() {
+        return !stockChanges.isEmpty();
+    }
+
+
+    private static class FulfillmentTimer implements Delayed {
+        private final Long requestId;
+        private final long deadlineMillis;
+
+        FulfillmentTimer(Long requestId, long deadlineMillis) {
+            this.requestId = requestId;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        Long getRequestId() {
+            return requestId;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((FulfillmentTimer) other).deadlineMillis);
+        }
     }
-}
\ No newline at end of file
+}
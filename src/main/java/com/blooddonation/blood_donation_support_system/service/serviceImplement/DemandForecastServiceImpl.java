@@ -0,0 +1,306 @@
+package com.blooddonation.blood_donation_support_system.service.serviceImplement;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.DemandForecastDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
+import com.blooddonation.blood_donation_support_system.service.DemandForecastService;
+import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rolling demand per (BloodType, ComponentType) kept entirely in memory. Each cell has a ring of
+ * daily totals over the last {@link #WINDOW_DAYS} days with a running window sum, and an
+ * exponentially weighted daily rate folded in as each day closes. Recording a request is O(1) per
+ * component; closing a day touches every cell once, so it is O(1) amortized per request.
+ * <p>
+ * State is checkpointed to a file on a schedule and on shutdown. On startup the checkpoint is
+ * restored and the requests inserted since it was written are replayed from the database; without
+ * a checkpoint the whole window is seeded from the database in one grouped query. The replay goes
+ * by the server-side insert time, since the created time comes from the client and may predate the
+ * checkpoint, and it reaches back over the replay overlap to pick up transactions that were still
+ * open when the checkpoint was written. Requests counted within that overlap are kept by id, in
+ * memory and in the checkpoint, so none is counted twice.
+ */
+@Service
+@Slf4j
+public class DemandForecastServiceImpl implements DemandForecastService {
+    static final int WINDOW_DAYS = 56;
+    // Smoothing of a 14-day exponential moving average
+    private static final double TREND_ALPHA = 2.0 / (14 + 1);
+    private static final int CHECKPOINT_VERSION = 2;
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    @Autowired
+    private BloodRequestRepository bloodRequestRepository;
+    @Autowired
+    private MedicalFacilityStockService medicalFacilityStockService;
+
+    @Value("${demand-forecast.checkpoint-file:demand-forecast.checkpoint}")
+    private String checkpointFile;
+    @Value("${demand-forecast.replay-overlap-ms:600000}")
+    private long replayOverlapMillis;
+    private Clock clock = Clock.systemDefaultZone();
+
+    // daily[cell][epochDay % WINDOW_DAYS]
+    private final double[][] daily = new double[StockLedger.CELL_COUNT][WINDOW_DAYS];
+    private final double[] windowTotal = new double[StockLedger.CELL_COUNT];
+    private final double[] trend = new double[StockLedger.CELL_COUNT];
+    // Newest day in the ring, and the first day demand was tracked from
+    private long currentDay = NO_DAY;
+    private long firstDay = NO_DAY;
+    // Request id -> epoch millis it was counted at, oldest first, for the last replay overlap
+    private final LinkedHashMap<Long, Long> recentlyCounted = new LinkedHashMap<>();
+    // Requests inserted before this were counted by the database seed
+    private long seededAt = Long.MIN_VALUE;
+
+    @PostConstruct
+    public void warmStart() {
+        Long savedAt = null;
+        try {
+            savedAt = restoreCheckpoint();
+        } catch (IOException e) {
+            log.warn("Could not restore demand forecast checkpoint {}, seeding from the database", checkpointFile, e);
+        }
+        synchronized (this) {
+            if (savedAt == null) {
+                LocalDate windowStart = LocalDate.now(clock).minusDays(WINDOW_DAYS - 1);
+                reset();
+                advanceTo(windowStart.toEpochDay());
+                seededAt = clock.millis();
+                for (Object[] row : bloodRequestRepository.sumDailyDemandSince(windowStart.atStartOfDay())) {
+                    record(StockLedger.cellOf((BloodType) row[0], (ComponentType) row[1]),
+                            ((LocalDate) row[2]).toEpochDay(), ((Number) row[3]).doubleValue());
+                }
+            } else {
+                replayInsertedSince(Math.max(savedAt - replayOverlapMillis, seededAt));
+            }
+            advanceTo(LocalDate.now(clock).toEpochDay());
+        }
+    }
+
+    @Override
+    public synchronized void recordDemand(Long requestId, BloodType bloodType, List<ComponentRequestDto> componentRequests,
+                                          LocalDateTime createdTime) {
+        if (bloodType == null || componentRequests == null) return;
+        if (requestId != null) {
+            if (recentlyCounted.containsKey(requestId)) return;
+            markCounted(requestId);
+        }
+        long day = (createdTime != null ? createdTime.toLocalDate() : LocalDate.now(clock)).toEpochDay();
+        for (ComponentRequestDto compReq : componentRequests) {
+            if (compReq.getComponentType() == null || compReq.getVolume() <= 0) continue;
+            record(StockLedger.cellOf(bloodType, compReq.getComponentType()), day, compReq.getVolume());
+        }
+    }
+
+    /**
+     * Days of supply divide unheld stock by the larger of the window average and the trend, so a
+     * rising demand shortens the estimate straight away while a lull does not stretch it.
+     */
+    @Override
+    public List<DemandForecastDto> getForecast() {
+        double[] available = medicalFacilityStockService.getStockSnapshot();
+        List<DemandForecastDto> forecast = new ArrayList<>(StockLedger.CELL_COUNT);
+        synchronized (this) {
+            advanceTo(LocalDate.now(clock).toEpochDay());
+            long observedDays = Math.max(1, Math.min(WINDOW_DAYS, currentDay - firstDay + 1));
+            for (int cell = 0; cell < StockLedger.CELL_COUNT; cell++) {
+                double average = windowTotal[cell] / observedDays;
+                double rate = Math.max(average, trend[cell]);
+                forecast.add(DemandForecastDto.builder()
+                        .bloodType(StockLedger.bloodTypeOf(cell))
+                        .componentType(StockLedger.componentTypeOf(cell))
+                        .availableVolume(available[cell])
+                        .windowDemand(windowTotal[cell])
+                        .averageDailyDemand(average)
+                        .trendDailyDemand(trend[cell])
+                        .daysOfSupply(rate > 0 ? available[cell] / rate : null)
+                        .build());
+            }
+        }
+        return forecast;
+    }
+
+    @Override
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${demand-forecast.checkpoint-interval-ms:300000}",
+            initialDelayString = "${demand-forecast.checkpoint-interval-ms:300000}")
+    public void checkpoint() {
+        Path target = Paths.get(checkpointFile).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            if (target.getParent() != null) Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                synchronized (this) {
+                    out.writeInt(CHECKPOINT_VERSION);
+                    out.writeInt(WINDOW_DAYS);
+                    out.writeInt(StockLedger.CELL_COUNT);
+                    out.writeLong(clock.millis());
+                    out.writeLong(currentDay);
+                    out.writeLong(firstDay);
+                    out.writeLong(seededAt);
+                    for (int cell = 0; cell < StockLedger.CELL_COUNT; cell++) {
+                        out.writeDouble(windowTotal[cell]);
+                        out.writeDouble(trend[cell]);
+                        for (double volume : daily[cell]) out.writeDouble(volume);
+                    }
+                    forgetCountedBefore(clock.millis() - replayOverlapMillis);
+                    out.writeInt(recentlyCounted.size());
+                    for (Map.Entry<Long, Long> counted : recentlyCounted.entrySet()) {
+                        out.writeLong(counted.getKey());
+                        out.writeLong(counted.getValue());
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write demand forecast checkpoint {}", target, e);
+        }
+    }
+
+    // Test seams: the day demand is recorded and forecast against, and the checkpoint to use
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    void setReplayOverlapMillis(long replayOverlapMillis) {
+        this.replayOverlapMillis = replayOverlapMillis;
+    }
+
+    /**
+     * @return epoch millis the restored checkpoint was written at, or null when there is none to restore
+     */
+    private Long restoreCheckpoint() throws IOException {
+        Path source = Paths.get(checkpointFile).toAbsolutePath();
+        if (!Files.isRegularFile(source)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != CHECKPOINT_VERSION || in.readInt() != WINDOW_DAYS
+                    || in.readInt() != StockLedger.CELL_COUNT) {
+                log.info("Demand forecast checkpoint {} has a different layout, ignoring it", source);
+                return null;
+            }
+            long savedAt = in.readLong();
+            synchronized (this) {
+                currentDay = in.readLong();
+                firstDay = in.readLong();
+                seededAt = in.readLong();
+                for (int cell = 0; cell < StockLedger.CELL_COUNT; cell++) {
+                    windowTotal[cell] = in.readDouble();
+                    trend[cell] = in.readDouble();
+                    for (int slot = 0; slot < WINDOW_DAYS; slot++) daily[cell][slot] = in.readDouble();
+                }
+                recentlyCounted.clear();
+                for (int i = in.readInt(); i > 0; i--) recentlyCounted.put(in.readLong(), in.readLong());
+            }
+            return savedAt;
+        }
+    }
+
+    /**
+     * Counts every request inserted at or after {@code fromMillis} that is not counted yet. Rows
+     * come one per component, so a request is only skipped if it was counted before the replay.
+     */
+    private void replayInsertedSince(long fromMillis) {
+        LocalDateTime from = LocalDateTime.ofInstant(Instant.ofEpochMilli(fromMillis), clock.getZone());
+        Set<Long> replayed = new HashSet<>();
+        for (Object[] row : bloodRequestRepository.findDemandInsertedSince(from)) {
+            Long requestId = (Long) row[0];
+            if (recentlyCounted.containsKey(requestId)) continue;
+            replayed.add(requestId);
+            record(StockLedger.cellOf((BloodType) row[1], (ComponentType) row[2]),
+                    ((LocalDateTime) row[3]).toLocalDate().toEpochDay(), ((Number) row[4]).doubleValue());
+        }
+        replayed.forEach(this::markCounted);
+    }
+
+    private void markCounted(Long requestId) {
+        long now = clock.millis();
+        recentlyCounted.put(requestId, now);
+        forgetCountedBefore(now - replayOverlapMillis);
+    }
+
+    // Entries are in the order they were counted, so the stale ones are all at the head
+    private void forgetCountedBefore(long millis) {
+        Iterator<Long> countedAt = recentlyCounted.values().iterator();
+        while (countedAt.hasNext() && countedAt.next() < millis) countedAt.remove();
+    }
+
+    private void record(int cell, long day, double volume) {
+        if (currentDay == NO_DAY || day > currentDay) advanceTo(day);
+        // Days that already left the window no longer count
+        if (day <= currentDay - WINDOW_DAYS) return;
+        daily[cell][slot(day)] += volume;
+        windowTotal[cell] += volume;
+    }
+
+    /**
+     * Closes every day up to {@code day}: folds its total into the trend and frees its slot for
+     * the day that reuses it.
+     */
+    private void advanceTo(long day) {
+        if (currentDay == NO_DAY) {
+            currentDay = day;
+            firstDay = day;
+            return;
+        }
+        while (currentDay < day) {
+            int closing = slot(currentDay);
+            currentDay++;
+            int opening = slot(currentDay);
+            for (int cell = 0; cell < StockLedger.CELL_COUNT; cell++) {
+                trend[cell] = TREND_ALPHA * daily[cell][closing] + (1 - TREND_ALPHA) * trend[cell];
+                windowTotal[cell] -= daily[cell][opening];
+                daily[cell][opening] = 0;
+            }
+        }
+    }
+
+    private void reset() {
+        for (double[] cellDays : daily) Arrays.fill(cellDays, 0);
+        Arrays.fill(windowTotal, 0);
+        Arrays.fill(trend, 0);
+        currentDay = NO_DAY;
+        firstDay = NO_DAY;
+        recentlyCounted.clear();
+        seededAt = Long.MIN_VALUE;
+    }
+
+    private static int slot(long day) {
+        return (int) Math.floorMod(day, (long) WINDOW_DAYS);
+    }
+}
@@ -1,29 +1,72 @@
 package com.blooddonation.blood_donation_support_system.service.serviceImplement;
 
+import com.blooddonation.blood_donation_support_system.component.OptimisticRetryExecutor;
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.component.StockMovementLog;
 import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
-import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
 import com.blooddonation.blood_donation_support_system.dto.MedicalFacilityStockDto;
+import com.blooddonation.blood_donation_support_system.dto.StockLevelDto;
 import com.blooddonation.blood_donation_support_system.entity.BloodUnit;
-import com.blooddonation.blood_donation_support_system.entity.DonationEvent;
 import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
+import com.blooddonation.blood_donation_support_system.entity.StockExpiryLog;
+import com.blooddonation.blood_donation_support_system.entity.StockMovement;
 import com.blooddonation.blood_donation_support_system.enums.*;
+import com.blooddonation.blood_donation_support_system.event.StockChangedEvent;
 import com.blooddonation.blood_donation_support_system.mapper.BloodRequestMapper;
 import com.blooddonation.blood_donation_support_system.mapper.MedicalFacilityStockMapper;
 import com.blooddonation.blood_donation_support_system.mapper.ProfileMapper;
 import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
 import com.blooddonation.blood_donation_support_system.repository.BloodUnitRepository;
 import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockExpiryLogRepository;
 import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
 import com.blooddonation.blood_donation_support_system.validator.MedicalFacilityStockValidator;
 import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Service
+@Slf4j
 public class MedicalFacilityStockServiceImpl implements MedicalFacilityStockService {
+    private static final String MERGE_LOT_SQL =
+            "UPDATE medical_facility_stocks SET volume = volume + ?, version = version + 1 WHERE id = (SELECT MIN(id) FROM medical_facility_stocks " +
+            "WHERE blood_type = ? AND component_type = ? AND expiry_date = ?)";
+    private static final String SWEEP_EXPIRED_SQL =
+            "WITH expired AS (DELETE FROM medical_facility_stocks WHERE expiry_date < CURRENT_DATE " +
+            "RETURNING id, blood_type, component_type, volume, expiry_date), " +
+            "moved AS (INSERT INTO stock_movements (blood_type, component_type, movement_type, volume, lot_id, created_at) " +
+            "SELECT blood_type, component_type, 'EXPIRY', -volume, id, ? FROM expired) " +
+            "INSERT INTO stock_expiry_logs (stock_id, blood_type, component_type, volume, expiry_date, removed_at) " +
+            "SELECT id, blood_type, component_type, volume, expiry_date, ? FROM expired " +
+            "RETURNING stock_id, blood_type, component_type";
+    private static final String INSERT_LOT_SQL =
+            "INSERT INTO medical_facility_stocks (blood_type, component_type, expiry_date, volume, version) VALUES (?, ?, ?, ?, 0)";
+
+    private record LotKey(BloodType bloodType, ComponentType componentType, LocalDate expiryDate) {
+    }
+
+    private record MovementKey(LotKey lot, MovementType movementType) {
+    }
+
     @Autowired
     private MedicalFacilityStockRepository medicalFacilityStockRepository;
     @Autowired
@@ -32,43 +75,88 @@ public class MedicalFacilityStockServiceImpl implements MedicalFacilityStockServ
     private MedicalFacilityStockValidator validator;
     @Autowired
     private BloodRequestRepository bloodRequestRepository;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private StockLedger stockLedger;
+    @Autowired
+    private StockMovementLog stockMovementLog;
+    @Autowired
+    private OptimisticRetryExecutor retryExecutor;
+    @Autowired
+    private StockExpiryLogRepository stockExpiryLogRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${stock.expiry.report-days:7}")
+    private int expiryReportDays;
 
+    /**
+     * Adds the event's pending blood units to stock in one transaction. Units are split and grouped
+     * in memory by (type, component, expiry), each group is merged into its lot by a batched
+     * update or inserted by a batched insert, and the units are marked COMPLETED with one update.
+     * The ledger mirrors the touched lots once the transaction has committed.
+     */
     @Override
     public String addBloodUnitsToStockByEventId(Long eventId, String userEmail) {
         // Fetch Data
         List<BloodUnit> bloodUnits = validator.validateAndGetBloodUnits(eventId);
+        LocalDate donationDate = validator.getEventOrThrow(eventId).getDonationDate();
 
-        // Add Blood Units to Stock
+        List<Long> unitIds = new ArrayList<>();
+        Map<LotKey, Double> volumes = new LinkedHashMap<>();
+        Map<MovementKey, Double> movedVolumes = new LinkedHashMap<>();
         for (BloodUnit bloodUnit : bloodUnits) {
-            MedicalFacilityStock stock = MedicalFacilityStockMapper.fromBloodUnit(bloodUnit);
+            if (bloodUnit.getStatus() == BloodUnitStatus.COMPLETED) continue;
+            MedicalFacilityStock stock = MedicalFacilityStockMapper.fromBloodUnit(bloodUnit, donationDate);
+            boolean split = bloodUnit.getComponentType() == ComponentType.WHOLE_BLOOD;
+            List<MedicalFacilityStock> components = split
+                    ? divideWholeBloodIntoComponents(stock, donationDate)
+                    : List.of(stock);
+            for (MedicalFacilityStock component : components) {
+                LotKey key = new LotKey(component.getBloodType(), component.getComponentType(), component.getExpiryDate());
+                volumes.merge(key, component.getVolume(), Double::sum);
+                movedVolumes.merge(new MovementKey(key, split ? MovementType.SPLIT : MovementType.INTAKE),
+                        component.getVolume(), Double::sum);
+            }
+            unitIds.add(bloodUnit.getId());
+        }
+        if (unitIds.isEmpty()) {
+            return "All blood units of this event are already in stock";
+        }
 
-            if (bloodUnit.getComponentType() == ComponentType.WHOLE_BLOOD) {
-                List<MedicalFacilityStock> components = divideWholeBloodIntoComponents(stock, eventId);
-                for (MedicalFacilityStock component : components) {
-                    updateOrCreateStock(component);
-                }
-            } else {
-                updateOrCreateStock(stock);
+        Map<LotKey, MedicalFacilityStock> lots = retryExecutor.execute("ingest-event-units", status -> {
+            upsertLots(volumes);
+            // Units another ingestion completed meanwhile would otherwise be counted twice
+            if (bloodUnitRepository.updateStatusByIdIn(unitIds, BloodUnitStatus.COMPLETED) != unitIds.size()) {
+                throw new RuntimeException(String.format("Blood units of event ID %d are already being added to stock", eventId));
             }
+            Map<LotKey, MedicalFacilityStock> touched = findLots(volumes.keySet());
+            List<StockMovement> movements = new ArrayList<>(movedVolumes.size());
+            movedVolumes.forEach((key, volume) -> movements.add(StockMovementLog.movement(
+                    key.lot().bloodType(), key.lot().componentType(), key.movementType(), volume, touched.get(key.lot()).getId())));
+            stockMovementLog.append(movements);
+            return touched;
+        });
 
-            // Update Blood Unit status to COMPLETED
-            bloodUnit.setStatus(BloodUnitStatus.COMPLETED);
-            bloodUnitRepository.save(bloodUnit);
+        Set<Integer> changedCells = new TreeSet<>();
+        for (MedicalFacilityStock lot : lots.values()) {
+            stockLedger.putLot(lot);
+            changedCells.add(StockLedger.cellOf(lot.getBloodType(), lot.getComponentType()));
+        }
+        for (int cell : changedCells) {
+            eventPublisher.publishEvent(new StockChangedEvent(StockLedger.bloodTypeOf(cell), StockLedger.componentTypeOf(cell)));
         }
 
-        return String.format("Successfully added %d blood units to stock", bloodUnits.size());
+        return String.format("Successfully added %d blood units to stock", unitIds.size());
     }
 
     @Transactional
     public int withdrawBloodFromStock(BloodRequestDto bloodRequestDto) {
-        int dataChanges = 0;
-        for (ComponentRequestDto componentRequest : bloodRequestDto.getComponentRequests()) {
-            dataChanges += medicalFacilityStockRepository.withdrawBloodFromStock(
-                    bloodRequestDto.getBloodType(),
-                    componentRequest.getComponentType(),
-                    componentRequest.getVolume()
-            );
+        if (!tryWithdrawBloodFromStock(bloodRequestDto)) {
+            return 0;
         }
+        int dataChanges = bloodRequestDto.getComponentRequests() != null ? bloodRequestDto.getComponentRequests().size() : 0;
         if(!bloodRequestDto.isAutomation()) {
             bloodRequestDto.setStatus(BloodRequestStatus.FULFILLED);
             bloodRequestRepository.save(BloodRequestMapper.toBloodRequestEntity(bloodRequestDto, ProfileMapper.toEntity(bloodRequestDto.getProfile())));
@@ -77,35 +165,107 @@ public class MedicalFacilityStockServiceImpl implements MedicalFacilityStockServ
     }
 
 
-    public String updateBeforeWithdraw(String userEmail) {
-        List<MedicalFacilityStock> stocks = medicalFacilityStockRepository.findAll();
-        StringBuilder removedStock = new StringBuilder();
-        int count = 0;
-
-        for (MedicalFacilityStock stock : stocks) {
-            if (stock.getExpiryDate().isBefore(LocalDate.now())) {
-                removedStock.append("Please removed expired stock at your facility: ID=")
-                        .append(stock.getId())
-                        .append(", Type=")
-                        .append(stock.getBloodType())
-                        .append(", Component=")
-                        .append(stock.getComponentType())
-                        .append(", Volume=")
-                        .append(stock.getVolume())
-                        .append(", Expiry=")
-                        .append(stock.getExpiryDate())
-                        .append("\n");
-
-                medicalFacilityStockRepository.delete(stock);
-                count++;
-            }
-        }
+    @Override
+    public boolean tryWithdrawBloodFromStock(BloodRequestDto bloodRequestDto) {
+        return stockLedger.tryWithdraw(bloodRequestDto.getBloodType(), bloodRequestDto.getComponentRequests());
+    }
+
+    @Override
+    public boolean tryWithdrawBloodFromStock(BloodType bloodType, double[] componentVolumes) {
+        return stockLedger.tryWithdraw(bloodType, componentVolumes);
+    }
+
+    @Override
+    public double[] getStockSnapshot() {
+        return stockLedger.snapshot();
+    }
+
+    @Override
+    public boolean holdStock(Long requestId, BloodType bloodType, double[] componentVolumes, Duration ttl) {
+        return stockLedger.hold(requestId, bloodType, componentVolumes, ttl);
+    }
+
+    @Override
+    public boolean holdStock(Long requestId, double[] demand, Duration ttl) {
+        return stockLedger.hold(requestId, demand, ttl);
+    }
+
+    @Override
+    public boolean restoreHold(Long requestId, BloodType bloodType, double[] componentVolumes, Duration ttl) {
+        return stockLedger.restore(requestId, bloodType, componentVolumes, ttl);
+    }
+
+    @Override
+    public boolean transferHolds(Collection<Long> fromRequestIds, Long toRequestId, double[] demand, Duration ttl) {
+        return stockLedger.transfer(fromRequestIds, toRequestId, demand, ttl);
+    }
 
-        if (count == 0) {
+    @Override
+    public boolean commitHold(Long requestId) {
+        return stockLedger.commit(requestId);
+    }
+
+    @Override
+    public boolean releaseHold(Long requestId) {
+        return stockLedger.release(requestId);
+    }
+
+    @Override
+    public void forgetHold(Long requestId) {
+        stockLedger.forget(requestId);
+    }
+
+    @Override
+    public double[] getHeldVolumes(Long requestId) {
+        return stockLedger.heldBy(requestId);
+    }
+
+    /**
+     * Deletes every expired lot and logs it in one statement, so the cost follows the number of
+     * expired lots rather than the size of the table. Each lot is removed by exactly one node even
+     * when several sweep at once, and recorded as an expiry movement by the same statement. Pending
+     * withdrawals are written first so none is lost with its lot.
+     */
+    @Scheduled(fixedDelayString = "${stock.expiry.sweep-interval-ms:3600000}",
+            initialDelayString = "${stock.expiry.sweep-initial-delay-ms:60000}")
+    public void sweepExpiredStock() {
+        stockLedger.flush();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<MedicalFacilityStock> expired = jdbcTemplate.query(SWEEP_EXPIRED_SQL,
+                (rs, rowNum) -> MedicalFacilityStock.builder()
+                        .id(rs.getLong("stock_id"))
+                        .bloodType(BloodType.valueOf(rs.getString("blood_type")))
+                        .componentType(ComponentType.valueOf(rs.getString("component_type")))
+                        .build(),
+                now, now);
+        if (expired.isEmpty()) return;
+        expired.forEach(stockLedger::removeLot);
+        log.info("Removed {} expired stock lots", expired.size());
+    }
+
+    @Override
+    public String getExpiryReport() {
+        LocalDateTime since = LocalDate.now().minusDays(expiryReportDays).atStartOfDay();
+        List<StockExpiryLog> removed = stockExpiryLogRepository.findByRemovedAtGreaterThanEqualOrderByRemovedAtDescIdAsc(since);
+        if (removed.isEmpty()) {
             return "No expired stocks found";
         }
 
-        return String.format("Removed %d expired stocks:\n%s", count, removedStock.toString());
+        StringBuilder removedStock = new StringBuilder();
+        for (StockExpiryLog entry : removed) {
+            removedStock.append("Please removed expired stock at your facility: ID=")
+                    .append(entry.getStockId())
+                    .append(", Type=")
+                    .append(entry.getBloodType())
+                    .append(", Component=")
+                    .append(entry.getComponentType())
+                    .append(", Volume=")
+                    .append(entry.getVolume())
+                    .append(", Expiry=")
+                    .append(entry.getExpiryDate())
+                    .append("\n");
+        }
+        return String.format("Removed %d expired stocks:\n%s", removed.size(), removedStock.toString());
     }
 
     @Override
@@ -116,6 +276,12 @@ public class MedicalFacilityStockServiceImpl implements MedicalFacilityStockServ
                 .toList();
     }
 
+    // Served from the ledger, which every stock change in this service goes through
+    @Override
+    public List<StockLevelDto> getStockSummary() {
+        return stockLedger.levels();
+    }
+
     @Override
     public List<MedicalFacilityStockDto> getAvailableBloodByType(BloodType bloodType, List<ComponentType> componentTypes) {
         List<MedicalFacilityStock> medicalFacilityStocks = medicalFacilityStockRepository.findAvailableBloodByType(bloodType, componentTypes);
@@ -131,23 +297,49 @@ public class MedicalFacilityStockServiceImpl implements MedicalFacilityStockServ
                 .toList();
     }
 
-    private void updateOrCreateStock(MedicalFacilityStock newStock) {
-        medicalFacilityStockRepository.findByBloodTypeAndComponentType(
-                newStock.getBloodType(),
-                newStock.getComponentType()
-        ).ifPresentOrElse(
-                existingStock -> {
-                    existingStock.setVolume(existingStock.getVolume() + newStock.getVolume());
-                    medicalFacilityStockRepository.save(existingStock);
-                },
-                () -> medicalFacilityStockRepository.save(newStock)
-        );
+    /**
+     * Adds each group's volume to the oldest lot with the same type, component and expiry, then
+     * inserts the groups no lot matched. Two JDBC batches whatever the number of groups.
+     */
+    private void upsertLots(Map<LotKey, Double> volumes) {
+        List<Map.Entry<LotKey, Double>> groups = new ArrayList<>(volumes.entrySet());
+        List<Object[]> merges = new ArrayList<>(groups.size());
+        for (Map.Entry<LotKey, Double> group : groups) {
+            LotKey key = group.getKey();
+            merges.add(new Object[]{group.getValue(), key.bloodType().name(), key.componentType().name(), key.expiryDate()});
+        }
+        int[] merged = jdbcTemplate.batchUpdate(MERGE_LOT_SQL, merges);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int k = 0; k < merged.length; k++) {
+            if (merged[k] != 0) continue;
+            LotKey key = groups.get(k).getKey();
+            inserts.add(new Object[]{key.bloodType().name(), key.componentType().name(), key.expiryDate(), groups.get(k).getValue()});
+        }
+        if (!inserts.isEmpty()) jdbcTemplate.batchUpdate(INSERT_LOT_SQL, inserts);
     }
 
-    @Transactional
-    protected List<MedicalFacilityStock> divideWholeBloodIntoComponents(MedicalFacilityStock wholeBloodStock, Long eventId) {
-        DonationEvent donationEvent = validator.getEventOrThrow(eventId);
-        LocalDate donationDate = donationEvent.getDonationDate();
+    // The lot each group was merged into or inserted as: the oldest one with its key
+    private Map<LotKey, MedicalFacilityStock> findLots(Set<LotKey> keys) {
+        Set<LocalDate> expiryDates = new HashSet<>();
+        for (LotKey key : keys) expiryDates.add(key.expiryDate());
+        Map<LotKey, MedicalFacilityStock> oldest = new HashMap<>();
+        for (MedicalFacilityStock lot : medicalFacilityStockRepository.findByExpiryDateIn(expiryDates)) {
+            LotKey key = new LotKey(lot.getBloodType(), lot.getComponentType(), lot.getExpiryDate());
+            if (keys.contains(key)) oldest.merge(key, lot, (a, b) -> a.getId() <= b.getId() ? a : b);
+        }
+        return oldest;
+    }
+
+    // Mirrors lots written by a committed transaction into the ledger and wakes up pending requests
+    private void publishLots(List<MedicalFacilityStock> lots) {
+        for (MedicalFacilityStock lot : lots) {
+            stockLedger.putLot(lot);
+            eventPublisher.publishEvent(new StockChangedEvent(lot.getBloodType(), lot.getComponentType()));
+        }
+    }
+
+    protected List<MedicalFacilityStock> divideWholeBloodIntoComponents(MedicalFacilityStock wholeBloodStock, LocalDate donationDate) {
         double originalVolume = wholeBloodStock.getVolume();
         BloodType bloodType = wholeBloodStock.getBloodType();
 
@@ -156,44 +348,74 @@ public class MedicalFacilityStockServiceImpl implements MedicalFacilityStockServ
                         bloodType,
                         ComponentType.PLASMA,
                         originalVolume * 0.55,
-                        donationDate.plusYears(1)
+                        MedicalFacilityStockMapper.expiryDateOf(ComponentType.PLASMA, donationDate)
                 ),
                 MedicalFacilityStockMapper.createComponent(
                         bloodType,
                         ComponentType.RED_BLOOD_CELLS,
                         originalVolume * 0.44,
-                        donationDate.plusDays(42)
+                        MedicalFacilityStockMapper.expiryDateOf(ComponentType.RED_BLOOD_CELLS, donationDate)
                 ),
                 MedicalFacilityStockMapper.createComponent(
                         bloodType,
                         ComponentType.PLATELETS,
                         originalVolume * 0.01,
-                        donationDate.plusWeeks(1)
+                        MedicalFacilityStockMapper.expiryDateOf(ComponentType.PLATELETS, donationDate)
                 )
         );
 
         return components;
     }
-    @Transactional
-    public int addToStock(BloodRequestDto bloodRequestDto) {
-        int dataChanges = 0;
-        for (ComponentRequestDto componentRequest : bloodRequestDto.getComponentRequests()) {
-            dataChanges += medicalFacilityStockRepository.addStock(bloodRequestDto.getBloodType(),
-                    componentRequest.getComponentType(),
-                    componentRequest.getVolume(),
-                    componentRequest.getExpiredDate());
-        }
-        return dataChanges;
-    }
+
     @Override
     public MedicalFacilityStockDto addBloodIntoStock(MedicalFacilityStockDto stockDto) {
-        MedicalFacilityStock entity = MedicalFacilityStockMapper.toEntity(stockDto);
-        MedicalFacilityStock saved = medicalFacilityStockRepository.save(entity);
+        // The lot as it was before an edit, which may move it to another cell
+        MedicalFacilityStock[] previous = new MedicalFacilityStock[1];
+        MedicalFacilityStock saved = retryExecutor.execute("add-blood-into-stock", status -> {
+            List<StockMovement> movements = new ArrayList<>(2);
+            MedicalFacilityStock stored = stockDto.getId() != null
+                    ? medicalFacilityStockRepository.findById(stockDto.getId()).orElse(null)
+                    : null;
+            previous[0] = stored != null ? MedicalFacilityStockMapper.copyWithNewVolume(stored, stored.getVolume()) : null;
+            if (stored != null) {
+                // An edited lot is recorded as taking out its old volume and putting in the new one
+                movements.add(StockMovementLog.movement(stored.getBloodType(), stored.getComponentType(),
+                        MovementType.ADJUSTMENT, -stored.getVolume(), stored.getId()));
+                stored.setVolume(stockDto.getVolume());
+                stored.setBloodType(stockDto.getBloodType());
+                stored.setComponentType(stockDto.getComponentType());
+                stored.setExpiryDate(stockDto.getExpiryDate());
+                stored = medicalFacilityStockRepository.saveAndFlush(stored);
+            } else {
+                MedicalFacilityStock entity = MedicalFacilityStockMapper.toEntity(stockDto);
+                entity.setId(null);
+                stored = medicalFacilityStockRepository.save(entity);
+            }
+            movements.add(StockMovementLog.movement(stored.getBloodType(), stored.getComponentType(),
+                    MovementType.ADJUSTMENT, stored.getVolume(), stored.getId()));
+            stockMovementLog.append(movements);
+            return stored;
+        });
+        MedicalFacilityStock before = previous[0];
+        if (before != null && (before.getBloodType() != saved.getBloodType()
+                || before.getComponentType() != saved.getComponentType())) {
+            stockLedger.removeLot(before);
+            eventPublisher.publishEvent(new StockChangedEvent(before.getBloodType(), before.getComponentType()));
+        }
+        publishLots(List.of(saved));
         return MedicalFacilityStockMapper.toDto(saved);
     }
 
     @Override
     public void deleteStockById(Long id) {
-        medicalFacilityStockRepository.deleteById(id);
+        stockLedger.flush();
+        MedicalFacilityStock deleted = retryExecutor.execute("delete-stock", status ->
+                medicalFacilityStockRepository.findById(id).map(stock -> {
+                    medicalFacilityStockRepository.delete(stock);
+                    stockMovementLog.append(StockMovementLog.movement(stock.getBloodType(), stock.getComponentType(),
+                            MovementType.ADJUSTMENT, -stock.getVolume(), stock.getId()));
+                    return stock;
+                }).orElse(null));
+        if (deleted != null) stockLedger.removeLot(deleted);
     }
 }
@@ -0,0 +1,339 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import com.blooddonation.blood_donation_support_system.util.AllocationPolicy;
+import com.blooddonation.blood_donation_support_system.util.CompatibleStockAllocator;
+import com.blooddonation.blood_donation_support_system.util.IndexedPriorityQueue;
+import com.blooddonation.blood_donation_support_system.util.QueueEntry;
+import com.blooddonation.blood_donation_support_system.util.ReservedVolumeIndex;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Replays request and stock timelines through the allocation rules on a virtual clock, entirely
+ * in memory. It follows the request service step for step: intake allocates against a stock
+ * snapshot across compatible blood types and holds the result, urgent requests that do not fit
+ * preempt lower-priority holds, processing requests are fulfilled at their deadline first expiry
+ * first out, and every stock increase reruns the pending queue for the donor types it touched.
+ * Lots expire at the first midnight after their expiry date, which is what the report counts as
+ * waste.
+ * <p>
+ * Runs are deterministic: the same timelines always produce the same report. Instances are not
+ * thread-safe but hold no state between runs.
+ */
+public class AllocationSimulator {
+    private static final ComponentType[] COMPONENT_TYPES = ComponentType.values();
+    private static final Urgency[] URGENCIES = Urgency.values();
+    private static final double EPSILON = 1e-6;
+
+    private final boolean crossType;
+    private final ZoneId zone;
+
+    public AllocationSimulator(boolean crossType) {
+        this(crossType, ZoneId.systemDefault());
+    }
+
+    /**
+     * @param zone zone the virtual clock's midnights fall in; must match the zone request
+     *             creation times were converted in, which is the system default for {@link QueueEntry}
+     */
+    public AllocationSimulator(boolean crossType, ZoneId zone) {
+        this.crossType = crossType;
+        this.zone = zone;
+    }
+
+    public SimulationReport run(List<SimulatedRequest> requests, List<SimulatedStockArrival> stockArrivals) {
+        return new Run(requests, stockArrivals).execute();
+    }
+
+    // Kinds at the same instant run in declaration order: expiry, then stock, then requests
+    private enum EventKind { MIDNIGHT, STOCK, REQUEST, DEADLINE }
+
+    private record Event(long time, EventKind kind, long seq, Object payload) {
+        static final Comparator<Event> ORDER = Comparator.comparingLong(Event::time)
+                .thenComparing(Event::kind)
+                .thenComparingLong(Event::seq);
+    }
+
+    private static final class Lot {
+        static final Comparator<Lot> FIRST_EXPIRY = Comparator.<Lot, LocalDate>comparing(lot -> lot.expiryDate)
+                .thenComparingLong(lot -> lot.seq);
+
+        final LocalDate expiryDate;
+        final long seq;
+        double volume;
+
+        Lot(LocalDate expiryDate, long seq, double volume) {
+            this.expiryDate = expiryDate;
+            this.seq = seq;
+            this.volume = volume;
+        }
+    }
+
+    private final class Run {
+        private final PriorityQueue<Event> events = new PriorityQueue<>(Event.ORDER);
+        private final IndexedPriorityQueue<QueueEntry> pending =
+                new IndexedPriorityQueue<>(QueueEntry.PRIORITY_ORDER, QueueEntry::getId);
+        private final IndexedPriorityQueue<QueueEntry> processing =
+                new IndexedPriorityQueue<>(QueueEntry.PRIORITY_ORDER, QueueEntry::getId);
+        private final ReservedVolumeIndex reservedVolumeIndex = new ReservedVolumeIndex();
+        private final Map<Long, double[]> holds = new HashMap<>();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final PriorityQueue<Lot>[] lots = new PriorityQueue[StockLedger.CELL_COUNT];
+        private final double[] stock = new double[StockLedger.CELL_COUNT];
+        private final double[] held = new double[StockLedger.CELL_COUNT];
+        private final int[] changedDonors = new int[COMPONENT_TYPES.length];
+
+        private final int[] arrived = new int[URGENCIES.length];
+        private final long[][] latencies = new long[URGENCIES.length][16];
+        private final int[] fulfilled = new int[URGENCIES.length];
+
+        private long seq;
+        private long now;
+        private LocalDate today;
+        private double supplied;
+        private double consumed;
+        private double wasted;
+        private long preemptions;
+        private long eventsProcessed;
+
+        Run(List<SimulatedRequest> requests, List<SimulatedStockArrival> stockArrivals) {
+            for (int cell = 0; cell < lots.length; cell++) lots[cell] = new PriorityQueue<>(Lot.FIRST_EXPIRY);
+            for (SimulatedRequest request : requests) {
+                if (request.entry().getUrgency() == null) {
+                    throw new IllegalArgumentException("Simulated request " + request.entry().getId() + " has no urgency");
+                }
+                schedule(request.arrivalMillis(), EventKind.REQUEST, request.entry());
+            }
+            for (SimulatedStockArrival arrival : stockArrivals) {
+                schedule(arrival.arrivalTime().atZone(zone).toInstant().toEpochMilli(), EventKind.STOCK, arrival);
+            }
+        }
+
+        SimulationReport execute() {
+            if (!events.isEmpty()) {
+                today = dateOf(events.peek().time());
+                scheduleMidnight();
+            }
+            Event event;
+            while ((event = events.poll()) != null) {
+                now = event.time();
+                eventsProcessed++;
+                switch (event.kind()) {
+                    case MIDNIGHT -> expireLots();
+                    case STOCK -> addStock((SimulatedStockArrival) event.payload());
+                    case REQUEST -> intake((QueueEntry) event.payload());
+                    case DEADLINE -> fulfill((Long) event.payload());
+                }
+                drainStockChanges();
+            }
+            Map<Urgency, SimulationReport.LatencyStats> byUrgency = new EnumMap<>(Urgency.class);
+            for (Urgency urgency : URGENCIES) {
+                int u = urgency.ordinal();
+                byUrgency.put(urgency, SimulationReport.LatencyStats.of(arrived[u], latencies[u], fulfilled[u]));
+            }
+            return new SimulationReport(byUrgency, supplied, consumed, wasted, preemptions, eventsProcessed);
+        }
+
+        private void intake(QueueEntry entry) {
+            arrived[entry.getUrgency().ordinal()]++;
+            double[] demand = CompatibleStockAllocator.allocate(entry, snapshot(), crossType);
+            if (demand != null) {
+                hold(entry.getId(), demand);
+                moveToProcessing(entry);
+            } else if (entry.getUrgency() == Urgency.HIGH) {
+                preempt(entry);
+            } else {
+                moveToPending(entry);
+            }
+        }
+
+        private void addStock(SimulatedStockArrival arrival) {
+            if (arrival.volume() <= EPSILON || arrival.bloodType() == null || arrival.componentType() == null) return;
+            supplied += arrival.volume();
+            LocalDate expiryDate = arrival.expiryDate() != null ? arrival.expiryDate() : LocalDate.MAX;
+            if (expiryDate.isBefore(today)) {
+                wasted += arrival.volume();
+                return;
+            }
+            int cell = StockLedger.cellOf(arrival.bloodType(), arrival.componentType());
+            lots[cell].add(new Lot(expiryDate, seq++, arrival.volume()));
+            stock[cell] += arrival.volume();
+            changedDonors[arrival.componentType().ordinal()] |= 1 << arrival.bloodType().ordinal();
+        }
+
+        /**
+         * Commits the hold of a processing request whose deadline came due. When lots under the
+         * hold expired meanwhile, the hold is dropped and the request goes back to pending, as the
+         * service does when neither the hold nor a direct withdrawal covers it.
+         */
+        private void fulfill(Long requestId) {
+            QueueEntry entry = processing.remove(requestId);
+            if (entry == null) return;
+            reservedVolumeIndex.remove(requestId);
+            double[] demand = holds.remove(requestId);
+            release(demand);
+            for (int cell = 0; cell < demand.length; cell++) {
+                if (demand[cell] > 0 && stock[cell] + EPSILON < demand[cell]) {
+                    moveToPending(entry);
+                    return;
+                }
+            }
+            for (int cell = 0; cell < demand.length; cell++) {
+                if (demand[cell] > 0) takeFromLots(cell, demand[cell]);
+            }
+            int u = entry.getUrgency().ordinal();
+            if (fulfilled[u] == latencies[u].length) latencies[u] = Arrays.copyOf(latencies[u], fulfilled[u] * 2);
+            latencies[u][fulfilled[u]++] = now - entry.getCreatedMillis();
+        }
+
+        private void expireLots() {
+            today = dateOf(now);
+            for (int cell = 0; cell < lots.length; cell++) {
+                PriorityQueue<Lot> cellLots = lots[cell];
+                while (!cellLots.isEmpty() && cellLots.peek().expiryDate.isBefore(today)) {
+                    Lot lot = cellLots.poll();
+                    stock[cell] -= lot.volume;
+                    wasted += lot.volume;
+                }
+            }
+            if (!events.isEmpty()) scheduleMidnight();
+        }
+
+        /**
+         * Reruns the pending queue, highest priority first, for every request a stock increase
+         * could help, until allocations and preemptions stop freeing stock.
+         */
+        private void drainStockChanges() {
+            while (hasStockChanges()) {
+                int[] changed = changedDonors.clone();
+                Arrays.fill(changedDonors, 0);
+                double[] available = snapshot();
+                for (QueueEntry request : pending.toSortedList()) {
+                    if (!CompatibleStockAllocator.isAffectedBy(request, changed, crossType)) continue;
+                    double[] demand = CompatibleStockAllocator.allocate(request, available, crossType);
+                    if (demand != null) {
+                        hold(request.getId(), demand);
+                        moveToProcessing(request);
+                    } else if (request.getUrgency() == Urgency.HIGH) {
+                        preempt(request);
+                        available = snapshot();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Mirrors the service's preemption: the shared policy allocates {@code entry} across
+         * compatible types and picks the victims, whose holds are then handed to it in one step.
+         */
+        private void preempt(QueueEntry entry) {
+            double[] demand = AllocationPolicy.preemptionDemand(entry, this::unheld, reservedVolumeIndex, crossType);
+            List<QueueEntry> bumped = demand == null ? null : AllocationPolicy.preemptionVictims(
+                    entry, demand, processing.toSortedList(), this::unheld, reservedVolumeIndex);
+            if (bumped == null) {
+                moveToPending(entry);
+                return;
+            }
+            double[] released = new double[StockLedger.CELL_COUNT];
+            for (QueueEntry lower : bumped) {
+                double[] hold = holds.get(lower.getId());
+                for (int cell = 0; cell < released.length; cell++) released[cell] += hold[cell];
+            }
+            for (int cell = 0; cell < demand.length; cell++) {
+                if (demand[cell] > 0 && unheld(cell) + released[cell] + EPSILON < demand[cell]) {
+                    moveToPending(entry);
+                    return;
+                }
+            }
+            for (QueueEntry lower : bumped) {
+                processing.remove(lower.getId());
+                reservedVolumeIndex.remove(lower.getId());
+                release(holds.remove(lower.getId()));
+                pending.offer(lower);
+                preemptions++;
+            }
+            hold(entry.getId(), demand);
+            for (int cell = 0; cell < released.length; cell++) {
+                if (released[cell] > demand[cell] + EPSILON) {
+                    changedDonors[StockLedger.componentTypeOf(cell).ordinal()] |= 1 << StockLedger.bloodTypeOf(cell).ordinal();
+                }
+            }
+            moveToProcessing(entry);
+        }
+
+        private void moveToProcessing(QueueEntry entry) {
+            pending.remove(entry.getId());
+            processing.offer(entry);
+            reservedVolumeIndex.add(entry, holds.get(entry.getId()));
+            schedule(Math.max(now, AllocationPolicy.fulfillmentDeadline(entry)), EventKind.DEADLINE, entry.getId());
+        }
+
+        private void moveToPending(QueueEntry entry) {
+            if (!pending.contains(entry.getId())) pending.offer(entry);
+        }
+
+        private void hold(Long requestId, double[] demand) {
+            holds.put(requestId, demand);
+            for (int cell = 0; cell < demand.length; cell++) held[cell] += demand[cell];
+        }
+
+        private void release(double[] demand) {
+            for (int cell = 0; cell < demand.length; cell++) held[cell] -= demand[cell];
+        }
+
+        private void takeFromLots(int cell, double volume) {
+            PriorityQueue<Lot> cellLots = lots[cell];
+            double remaining = volume;
+            while (remaining > EPSILON && !cellLots.isEmpty()) {
+                Lot lot = cellLots.peek();
+                double taken = Math.min(remaining, lot.volume);
+                lot.volume -= taken;
+                remaining -= taken;
+                if (lot.volume <= EPSILON) cellLots.poll();
+            }
+            stock[cell] -= volume - remaining;
+            consumed += volume - remaining;
+        }
+
+        private double unheld(int cell) {
+            return Math.max(0, stock[cell] - held[cell]);
+        }
+
+        private double[] snapshot() {
+            double[] available = new double[StockLedger.CELL_COUNT];
+            for (int cell = 0; cell < available.length; cell++) available[cell] = unheld(cell);
+            return available;
+        }
+
+        private boolean hasStockChanges() {
+            for (int donors : changedDonors) {
+                if (donors != 0) return true;
+            }
+            return false;
+        }
+
+        private void scheduleMidnight() {
+            schedule(today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(), EventKind.MIDNIGHT, null);
+        }
+
+        private void schedule(long time, EventKind kind, Object payload) {
+            events.add(new Event(time, kind, seq++, payload));
+        }
+
+        private LocalDate dateOf(long millis) {
+            return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.util.QueueEntry;
+
+/**
+ * A request arriving on the simulated timeline. Its arrival time is the entry's creation time.
+ */
+public record SimulatedRequest(QueueEntry entry) {
+
+    public static SimulatedRequest of(BloodRequestDto request) {
+        if (request.getCreatedTime() == null) {
+            throw new IllegalArgumentException("Simulated requests need a creation time");
+        }
+        return new SimulatedRequest(QueueEntry.of(request));
+    }
+
+    public long arrivalMillis() {
+        return entry.getCreatedMillis();
+    }
+}
@@ -0,0 +1,20 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import com.blooddonation.blood_donation_support_system.dto.MedicalFacilityStockDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A stock lot added on the simulated timeline. The lot is usable through its expiry date.
+ */
+public record SimulatedStockArrival(LocalDateTime arrivalTime, BloodType bloodType, ComponentType componentType,
+                                    double volume, LocalDate expiryDate) {
+
+    public static SimulatedStockArrival of(LocalDateTime arrivalTime, MedicalFacilityStockDto stock) {
+        return new SimulatedStockArrival(arrivalTime, stock.getBloodType(), stock.getComponentType(),
+                stock.getVolume() != null ? stock.getVolume() : 0, stock.getExpiryDate());
+    }
+}
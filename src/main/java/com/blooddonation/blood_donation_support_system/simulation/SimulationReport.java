@@ -0,0 +1,48 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Outcome of one simulated run.
+ *
+ * @param byUrgency         latency from arrival to fulfillment, per urgency
+ * @param suppliedVolume    volume of all stock arrivals
+ * @param fulfilledVolume   volume committed to fulfilled requests
+ * @param wastedVolume      volume that expired on the shelf
+ * @param preemptions       processing requests bumped back to pending by urgent ones
+ * @param eventsProcessed   events taken off the virtual clock
+ */
+public record SimulationReport(Map<Urgency, LatencyStats> byUrgency, double suppliedVolume,
+                               double fulfilledVolume, double wastedVolume, long preemptions,
+                               long eventsProcessed) {
+
+    public double wasteRatio() {
+        return suppliedVolume > 0 ? wastedVolume / suppliedVolume : 0;
+    }
+
+    /**
+     * @param requests    requests that arrived
+     * @param fulfilled   requests fulfilled before the timeline ran out
+     * @param p50Millis   median arrival-to-fulfillment latency of fulfilled requests
+     */
+    public record LatencyStats(int requests, int fulfilled, long p50Millis, long p90Millis, long p99Millis,
+                               long maxMillis) {
+
+        static LatencyStats of(int requests, long[] latencies, int count) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return new LatencyStats(requests, count, percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), count > 0 ? sorted[count - 1] : 0);
+        }
+
+        // Nearest-rank percentile
+        private static long percentile(long[] sorted, int p) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import com.blooddonation.blood_donation_support_system.util.QueueEntry;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator of request and stock timelines for the allocation simulator. Blood types
+ * follow typical donor population frequencies, requests and donations arrive uniformly over each
+ * day, some are booked for a later date, and each component gets its usual shelf life. The same
+ * seed always yields the same timeline.
+ */
+public final class SyntheticTimeline {
+    private static final BloodType[] BLOOD_TYPES = {
+            BloodType.O_POSITIVE, BloodType.A_POSITIVE, BloodType.B_POSITIVE, BloodType.O_NEGATIVE,
+            BloodType.A_NEGATIVE, BloodType.AB_POSITIVE, BloodType.B_NEGATIVE, BloodType.AB_NEGATIVE};
+    private static final double[] BLOOD_TYPE_SHARES = {0.38, 0.34, 0.09, 0.07, 0.06, 0.03, 0.02, 0.01};
+    private static final Urgency[] URGENCIES = {Urgency.LOW, Urgency.MEDIUM, Urgency.HIGH};
+    private static final double[] URGENCY_SHARES = {0.5, 0.35, 0.15};
+    // Share of requests scheduled for a date one to seven days ahead
+    private static final double REQUIRED_DATE_SHARE = 0.3;
+    private static final ComponentType[] COMPONENT_TYPES = ComponentType.values();
+    private static final int[] SHELF_LIFE_DAYS = new int[COMPONENT_TYPES.length];
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    static {
+        SHELF_LIFE_DAYS[ComponentType.WHOLE_BLOOD.ordinal()] = 35;
+        SHELF_LIFE_DAYS[ComponentType.RED_BLOOD_CELLS.ordinal()] = 42;
+        SHELF_LIFE_DAYS[ComponentType.PLATELETS.ordinal()] = 5;
+        SHELF_LIFE_DAYS[ComponentType.PLASMA.ordinal()] = 365;
+    }
+
+    private SyntheticTimeline() {
+    }
+
+    public record Timeline(List<SimulatedRequest> requests, List<SimulatedStockArrival> stockArrivals) {
+    }
+
+    /**
+     * @param requestsPerDay average requests per day; each asks for one or two components
+     * @param lotsPerDay     average stock lots per day, one component each
+     */
+    public static Timeline generate(long seed, LocalDateTime start, int days, int requestsPerDay, int lotsPerDay) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<SimulatedRequest> requests = new ArrayList<>(days * requestsPerDay);
+        List<SimulatedStockArrival> stockArrivals = new ArrayList<>(days * lotsPerDay);
+        long nextId = 1;
+        for (int day = 0; day < days; day++) {
+            LocalDateTime midnight = start.plusDays(day);
+            for (int i = 0; i < lotsPerDay; i++) {
+                LocalDateTime arrivalTime = midnight.plusMinutes(random.nextLong(MINUTES_PER_DAY));
+                ComponentType componentType = COMPONENT_TYPES[random.nextInt(COMPONENT_TYPES.length)];
+                stockArrivals.add(new SimulatedStockArrival(arrivalTime, pick(random, BLOOD_TYPES, BLOOD_TYPE_SHARES),
+                        componentType, 250 + random.nextInt(5) * 50,
+                        arrivalTime.toLocalDate().plusDays(SHELF_LIFE_DAYS[componentType.ordinal()])));
+            }
+            for (int i = 0; i < requestsPerDay; i++) {
+                Urgency urgency = pick(random, URGENCIES, URGENCY_SHARES);
+                double[] volumes = new double[COMPONENT_TYPES.length];
+                int components = 1 + random.nextInt(2);
+                for (int c = 0; c < components; c++) {
+                    volumes[random.nextInt(COMPONENT_TYPES.length)] += 200 + random.nextInt(7) * 50;
+                }
+                int priority = BloodRequestDto.calculatePriority(urgency,
+                        random.nextInt(20) == 0, random.nextInt(20) == 0, random.nextInt(10) == 0);
+                LocalDateTime createdTime = midnight.plusMinutes(random.nextLong(MINUTES_PER_DAY));
+                LocalDate requiredDate = random.nextDouble() < REQUIRED_DATE_SHARE
+                        ? createdTime.toLocalDate().plusDays(1 + random.nextInt(7)) : null;
+                requests.add(new SimulatedRequest(QueueEntry.of(nextId++, priority, createdTime, requiredDate,
+                        pick(random, BLOOD_TYPES, BLOOD_TYPE_SHARES), urgency, volumes)));
+            }
+        }
+        return new Timeline(requests, stockArrivals);
+    }
+
+    private static <T> T pick(SplittableRandom random, T[] values, double[] shares) {
+        double roll = random.nextDouble();
+        for (int i = 0; i < values.length - 1; i++) {
+            roll -= shares[i];
+            if (roll < 0) return values[i];
+        }
+        return values[values.length - 1];
+    }
+}
@@ -0,0 +1,141 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Allocation rules shared by the request service and the allocation simulator: the order requests
+ * are served in, how long a processing request waits before fulfillment and which requests an
+ * urgent one may bump.
+ */
+public final class AllocationPolicy {
+    private static final int HIGH_URGENCY_DELAY = 0;
+    private static final int MEDIUM_URGENCY_DELAY = 1;
+    private static final int LOW_URGENCY_DELAY = 2;
+
+    // Head start per priority level; a request is overtaken only by requests arriving less than
+    // this times the priority difference after it
+    public static final long AGING_STEP_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Requests due within this window go ahead of every new arrival, earliest deadline first
+    public static final long DEADLINE_HORIZON_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private AllocationPolicy() {
+    }
+
+    /**
+     * Scheduling key of a request, lower served first. It is a virtual deadline, the earlier of
+     * <ul>
+     *     <li>creation time moved back by {@link #AGING_STEP_MILLIS} per priority level, so priority
+     *     buys a bounded head start and a waiting request ages past later, higher-priority arrivals</li>
+     *     <li>the start of {@code requiredDate} moved back by {@link #DEADLINE_HORIZON_MILLIS} plus the
+     *     largest head start, so requests coming due beat any new arrival and among themselves run
+     *     earliest deadline first</li>
+     * </ul>
+     * Neither term depends on the current time, so keys are fixed at enqueue and aging needs no
+     * re-sorting: the heap stays ordered as time passes.
+     */
+    public static long schedulingKey(int priority, long createdMillis, LocalDate requiredDate) {
+        long key = createdMillis - priority * AGING_STEP_MILLIS;
+        if (requiredDate != null) {
+            long dueMillis = requiredDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            key = Math.min(key, dueMillis - DEADLINE_HORIZON_MILLIS - BloodRequestDto.MAX_PRIORITY * AGING_STEP_MILLIS);
+        }
+        return key;
+    }
+
+    public static int fulfillmentDelayMinutes(Urgency urgency) {
+        switch (urgency) {
+            case LOW:
+                return LOW_URGENCY_DELAY;
+            case MEDIUM:
+                return MEDIUM_URGENCY_DELAY;
+            case HIGH:
+                return HIGH_URGENCY_DELAY;
+            default:
+                throw new IllegalArgumentException("Unknown urgency");
+        }
+    }
+
+    public static long fulfillmentDeadline(QueueEntry entry) {
+        return entry.getCreatedMillis() + TimeUnit.MINUTES.toMillis(fulfillmentDelayMinutes(entry.getUrgency()));
+    }
+
+    /**
+     * Cells {@code entry} would take by preempting: allocated across compatible donor types over the
+     * unheld volume plus what strictly lower-priority requests hold, so a victim holding another
+     * compatible type counts as well as one holding the exact type.
+     *
+     * @param unheld unheld volume per ledger cell
+     * @return demand per ledger cell, or null when not even bumping every lower-priority request
+     * would cover {@code entry}
+     */
+    public static double[] preemptionDemand(QueueEntry entry, IntToDoubleFunction unheld,
+                                            ReservedVolumeIndex reservedVolumeIndex, boolean crossType) {
+        double[] reachable = new double[StockLedger.CELL_COUNT];
+        for (int cell = 0; cell < reachable.length; cell++) {
+            reachable[cell] = unheld.applyAsDouble(cell) + reservedVolumeIndex.reservedBelow(cell, entry.getPriority());
+        }
+        return CompatibleStockAllocator.allocate(entry, reachable, crossType);
+    }
+
+    /**
+     * Picks the processing requests to bump so that {@code entry} fits: strictly lower priority,
+     * holding volume in a cell {@code entry} is short of, latest in scheduling order first, and only
+     * as many as the shortfall needs. Holds may span compatible donor types, so victims are counted
+     * by what they hold in the cells of {@code demand}, whatever their own blood type. The
+     * feasibility check is a prefix-sum lookup per cell before any candidate is looked at.
+     *
+     * @param demand     volume per ledger cell {@code entry} needs, see {@link #preemptionDemand}
+     * @param processing processing requests in scheduling order
+     * @param unheld     unheld volume per ledger cell
+     * @return the requests to bump, empty when stock already covers {@code entry}, or null when
+     * even bumping every lower-priority request would not free enough
+     */
+    public static List<QueueEntry> preemptionVictims(QueueEntry entry, double[] demand, List<QueueEntry> processing,
+                                                     IntToDoubleFunction unheld,
+                                                     ReservedVolumeIndex reservedVolumeIndex) {
+        int newPriority = entry.getPriority();
+        double[] shortfall = new double[demand.length];
+        boolean hasShortfall = false;
+        for (int cell = 0; cell < demand.length; cell++) {
+            if (demand[cell] <= 0) continue;
+            double free = unheld.applyAsDouble(cell);
+            double reserved = reservedVolumeIndex.reservedBelow(cell, newPriority);
+            if (free + reserved < demand[cell]) return null;
+            if (free < demand[cell]) {
+                shortfall[cell] = demand[cell] - free;
+                hasShortfall = true;
+            }
+        }
+
+        List<QueueEntry> bumped = new ArrayList<>();
+        for (int k = processing.size() - 1; k >= 0 && hasShortfall; k--) {
+            QueueEntry lower = processing.get(k);
+            if (lower.getPriority() >= newPriority) continue;
+            double[] held = reservedVolumeIndex.heldBy(lower.getId());
+            if (held == null || !relievesShortfall(held, shortfall)) continue;
+            bumped.add(lower);
+            hasShortfall = false;
+            for (int cell = 0; cell < shortfall.length; cell++) {
+                shortfall[cell] = Math.max(0, shortfall[cell] - held[cell]);
+                hasShortfall |= shortfall[cell] > 0;
+            }
+        }
+        return bumped;
+    }
+
+    private static boolean relievesShortfall(double[] held, double[] shortfall) {
+        for (int cell = 0; cell < shortfall.length; cell++) {
+            if (shortfall[cell] > 0 && held[cell] > 0) return true;
+        }
+        return false;
+    }
+}
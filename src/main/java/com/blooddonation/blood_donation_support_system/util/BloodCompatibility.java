@@ -0,0 +1,99 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ABO/Rh donor compatibility per component, precomputed as bitsets over {@link BloodType#ordinal()}.
+ * <ul>
+ *     <li>Red cells: the donor may not carry an A, B or D antigen the recipient lacks.</li>
+ *     <li>Whole blood: ABO-identical, with the red cell Rh rule.</li>
+ *     <li>Plasma: reversed, the recipient may not carry an A or B antigen the donor lacks; Rh does not apply.</li>
+ *     <li>Platelets: plasma ABO rule with the red cell Rh rule.</li>
+ * </ul>
+ */
+public final class BloodCompatibility {
+    private static final BloodType[] BLOOD_TYPES = BloodType.values();
+    private static final int A = 1, B = 2, D = 4;
+
+    // DONORS[component][recipient]: bitset of donor blood types
+    private static final int[][] DONORS = new int[ComponentType.values().length][BLOOD_TYPES.length];
+    // Compatible donors per component and recipient: exact match first, then the donors that can
+    // serve the fewest recipients, so universal donors are drawn on last
+    private static final BloodType[][][] DONOR_PREFERENCE =
+            new BloodType[ComponentType.values().length][BLOOD_TYPES.length][];
+
+    static {
+        for (ComponentType componentType : ComponentType.values()) {
+            int c = componentType.ordinal();
+            int[] recipientsServed = new int[BLOOD_TYPES.length];
+            for (BloodType recipient : BLOOD_TYPES) {
+                for (BloodType donor : BLOOD_TYPES) {
+                    if (compatible(donor, recipient, componentType)) {
+                        DONORS[c][recipient.ordinal()] |= 1 << donor.ordinal();
+                        recipientsServed[donor.ordinal()]++;
+                    }
+                }
+            }
+            for (BloodType recipient : BLOOD_TYPES) {
+                List<BloodType> donors = new ArrayList<>();
+                for (BloodType donor : BLOOD_TYPES) {
+                    if ((DONORS[c][recipient.ordinal()] & (1 << donor.ordinal())) != 0) donors.add(donor);
+                }
+                donors.sort(Comparator.comparing((BloodType donor) -> donor != recipient)
+                        .thenComparingInt(donor -> recipientsServed[donor.ordinal()])
+                        .thenComparingInt(Enum::ordinal));
+                DONOR_PREFERENCE[c][recipient.ordinal()] = donors.toArray(new BloodType[0]);
+            }
+        }
+    }
+
+    private BloodCompatibility() {
+    }
+
+    public static boolean canDonate(BloodType donor, BloodType recipient, ComponentType componentType) {
+        return (donorMask(componentType, recipient) & (1 << donor.ordinal())) != 0;
+    }
+
+    /**
+     * Bitset of the blood types that can donate {@code componentType} to {@code recipient}.
+     */
+    public static int donorMask(ComponentType componentType, BloodType recipient) {
+        return DONORS[componentType.ordinal()][recipient.ordinal()];
+    }
+
+    /**
+     * Compatible donor types in the order stock should be drawn from. Do not modify.
+     */
+    public static BloodType[] donorsByPreference(ComponentType componentType, BloodType recipient) {
+        return DONOR_PREFERENCE[componentType.ordinal()][recipient.ordinal()];
+    }
+
+    private static boolean compatible(BloodType donor, BloodType recipient, ComponentType componentType) {
+        int donorAbo = antigens(donor) & (A | B), recipientAbo = antigens(recipient) & (A | B);
+        boolean rhCompatible = (antigens(donor) & D) == 0 || (antigens(recipient) & D) != 0;
+        return switch (componentType) {
+            case RED_BLOOD_CELLS -> (donorAbo & ~recipientAbo) == 0 && rhCompatible;
+            case WHOLE_BLOOD -> donorAbo == recipientAbo && rhCompatible;
+            case PLASMA -> (recipientAbo & ~donorAbo) == 0;
+            case PLATELETS -> (recipientAbo & ~donorAbo) == 0 && rhCompatible;
+        };
+    }
+
+    private static int antigens(BloodType bloodType) {
+        return switch (bloodType) {
+            case A_POSITIVE -> A | D;
+            case A_NEGATIVE -> A;
+            case B_POSITIVE -> B | D;
+            case B_NEGATIVE -> B;
+            case AB_POSITIVE -> A | B | D;
+            case AB_NEGATIVE -> A | B;
+            case O_POSITIVE -> D;
+            case O_NEGATIVE -> 0;
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+
+/**
+ * Assigns stock cells to a queued request across compatible blood types, all or nothing. Every
+ * component is filled from its donors in {@link BloodCompatibility#donorsByPreference} order,
+ * splitting across donor types when one does not cover it. Works on a ledger snapshot and never
+ * touches the database.
+ */
+public final class CompatibleStockAllocator {
+    private static final ComponentType[] COMPONENT_TYPES = ComponentType.values();
+    private static final double EPSILON = 1e-6;
+
+    private CompatibleStockAllocator() {
+    }
+
+    /**
+     * @param available stock per ledger cell, debited only when the whole request fits
+     * @return demand per ledger cell, or null when the request cannot be covered
+     */
+    public static double[] allocate(QueueEntry request, double[] available, boolean crossType) {
+        BloodType recipient = request.getBloodType();
+        if (recipient == null) return null;
+        double[] demand = new double[StockLedger.CELL_COUNT];
+        for (ComponentType componentType : COMPONENT_TYPES) {
+            double remaining = request.getVolume(componentType);
+            if (remaining <= 0) continue;
+            BloodType[] donors = crossType
+                    ? BloodCompatibility.donorsByPreference(componentType, recipient)
+                    : new BloodType[]{recipient};
+            for (BloodType donor : donors) {
+                if (remaining <= EPSILON) break;
+                int cell = StockLedger.cellOf(donor, componentType);
+                double taken = Math.min(remaining, available[cell] - demand[cell]);
+                if (taken <= EPSILON) continue;
+                demand[cell] += taken;
+                remaining -= taken;
+            }
+            if (remaining > EPSILON) return null;
+        }
+        for (int cell = 0; cell < demand.length; cell++) {
+            available[cell] = Math.max(0, available[cell] - demand[cell]);
+        }
+        return demand;
+    }
+
+    /**
+     * Whether a stock change in any of {@code changedDonors} (bitsets over blood type per component)
+     * could help {@code request}.
+     */
+    public static boolean isAffectedBy(QueueEntry request, int[] changedDonors, boolean crossType) {
+        BloodType recipient = request.getBloodType();
+        if (recipient == null) return false;
+        for (ComponentType componentType : COMPONENT_TYPES) {
+            if (!request.requests(componentType)) continue;
+            int donors = crossType
+                    ? BloodCompatibility.donorMask(componentType, recipient)
+                    : 1 << recipient.ordinal();
+            if ((changedDonors[componentType.ordinal()] & donors) != 0) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,215 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread-safe d-ary min-heap whose elements are indexed by id, so {@link #remove(Long)},
+ * {@link #contains(Long)} and reprioritization through {@link #offer(Object)} run in
+ * O(log n) instead of scanning the queue. Optionally keeps a count of queued elements per bucket,
+ * maintained as elements come and go, so {@link #count(int)} never walks the heap.
+ */
+public class IndexedPriorityQueue<E> {
+    private static final int DEFAULT_ARITY = 4;
+
+    private final int arity;
+    private final Comparator<? super E> comparator;
+    private final Function<? super E, Long> idOf;
+    // Bucket of an element, negative for none; null when no counts are kept
+    private final ToIntFunction<? super E> bucketOf;
+    private final int[] bucketCounts;
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private Object[] heap = new Object[16];
+    private int size;
+
+    public IndexedPriorityQueue(Comparator<? super E> comparator, Function<? super E, Long> idOf) {
+        this(DEFAULT_ARITY, comparator, idOf);
+    }
+
+    public IndexedPriorityQueue(int arity, Comparator<? super E> comparator, Function<? super E, Long> idOf) {
+        this(arity, comparator, idOf, null, 0);
+    }
+
+    /**
+     * @param bucketOf    bucket of an element in {@code [0, bucketCount)}, or negative to leave it uncounted
+     * @param bucketCount number of buckets counted by {@link #count(int)}
+     */
+    public IndexedPriorityQueue(Comparator<? super E> comparator, Function<? super E, Long> idOf,
+                                ToIntFunction<? super E> bucketOf, int bucketCount) {
+        this(DEFAULT_ARITY, comparator, idOf, bucketOf, bucketCount);
+    }
+
+    private IndexedPriorityQueue(int arity, Comparator<? super E> comparator, Function<? super E, Long> idOf,
+                                 ToIntFunction<? super E> bucketOf, int bucketCount) {
+        if (arity < 2) throw new IllegalArgumentException("Heap arity must be at least 2");
+        this.arity = arity;
+        this.comparator = comparator;
+        this.idOf = idOf;
+        this.bucketOf = bucketOf;
+        this.bucketCounts = new int[bucketCount];
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Inserts the element, or replaces and reprioritizes the element already queued under its id.
+     */
+    public synchronized boolean offer(E element) {
+        Long id = idOf.apply(element);
+        if (id == null) throw new IllegalArgumentException("Queued elements must have an id");
+        Integer slot = slots.get(id);
+        if (slot != null) {
+            countBucket(elementAt(slot), -1);
+            countBucket(element, 1);
+            heap[slot] = element;
+            reposition(slot);
+            return true;
+        }
+        countBucket(element, 1);
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        heap[size] = element;
+        slots.put(id, size);
+        siftUp(size++);
+        return true;
+    }
+
+    public synchronized E peek() {
+        return size == 0 ? null : elementAt(0);
+    }
+
+    public synchronized E poll() {
+        return size == 0 ? null : removeAt(0);
+    }
+
+    public synchronized E get(Long id) {
+        Integer slot = slots.get(id);
+        return slot == null ? null : elementAt(slot);
+    }
+
+    public synchronized boolean contains(Long id) {
+        return slots.containsKey(id);
+    }
+
+    /**
+     * Removes the element queued under {@code id}, returning it, or null if none is queued.
+     */
+    public synchronized E remove(Long id) {
+        Integer slot = slots.get(id);
+        return slot == null ? null : removeAt(slot);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of queued elements in {@code bucket}; always 0 when the queue keeps no counts.
+     */
+    public synchronized int count(int bucket) {
+        return bucket >= 0 && bucket < bucketCounts.length ? bucketCounts[bucket] : 0;
+    }
+
+    /**
+     * Snapshot of the queued elements in heap order.
+     */
+    public synchronized List<E> toList() {
+        List<E> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) list.add(elementAt(i));
+        return list;
+    }
+
+    /**
+     * Snapshot of the queued elements in priority order.
+     */
+    public List<E> toSortedList() {
+        List<E> list = toList();
+        list.sort(comparator);
+        return list;
+    }
+
+    private E removeAt(int slot) {
+        E removed = elementAt(slot);
+        slots.remove(idOf.apply(removed));
+        countBucket(removed, -1);
+        int last = --size;
+        if (slot != last) {
+            move(last, slot);
+            reposition(slot);
+        }
+        heap[last] = null;
+        return removed;
+    }
+
+    private void countBucket(E element, int delta) {
+        if (bucketOf == null) return;
+        int bucket = bucketOf.applyAsInt(element);
+        if (bucket >= 0 && bucket < bucketCounts.length) bucketCounts[bucket] += delta;
+    }
+
+    private void reposition(int slot) {
+        if (slot > 0 && comparator.compare(elementAt(slot), elementAt((slot - 1) / arity)) < 0) {
+            siftUp(slot);
+        } else {
+            siftDown(slot);
+        }
+    }
+
+    private void siftUp(int slot) {
+        Object element = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) / arity;
+            if (comparator.compare(cast(element), elementAt(parent)) >= 0) break;
+            move(parent, slot);
+            slot = parent;
+        }
+        place(element, slot);
+    }
+
+    private void siftDown(int slot) {
+        Object element = heap[slot];
+        while (true) {
+            int first = slot * arity + 1;
+            if (first >= size) break;
+            int best = first;
+            int end = Math.min(first + arity, size);
+            for (int child = first + 1; child < end; child++) {
+                if (comparator.compare(elementAt(child), elementAt(best)) < 0) best = child;
+            }
+            if (comparator.compare(elementAt(best), cast(element)) >= 0) break;
+            move(best, slot);
+            slot = best;
+        }
+        place(element, slot);
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        slots.put(idOf.apply(elementAt(to)), to);
+    }
+
+    private void place(Object element, int slot) {
+        heap[slot] = element;
+        slots.put(idOf.apply(cast(element)), slot);
+    }
+
+    private E elementAt(int slot) {
+        return cast(heap[slot]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E cast(Object element) {
+        return (E) element;
+    }
+}
@@ -0,0 +1,123 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compact, immutable stand-in for a queued blood request: id, scheduling key, creation time,
+ * priority, blood type and urgency ordinals, and requested volume per component. The full
+ * {@link BloodRequestDto} is only loaded when a request is acted on.
+ */
+public final class QueueEntry {
+    private static final BloodType[] BLOOD_TYPES = BloodType.values();
+    private static final Urgency[] URGENCIES = Urgency.values();
+
+    // Lower scheduling key first, see AllocationPolicy.schedulingKey
+    public static final Comparator<QueueEntry> PRIORITY_ORDER = (a, b) -> {
+        int byKey = Long.compare(a.sortKey, b.sortKey);
+        return byKey != 0 ? byKey : Long.compare(a.id, b.id);
+    };
+
+    // Queue bucket by urgency ordinal, see AllocationMetrics.registerQueue
+    public static final ToIntFunction<QueueEntry> URGENCY_BUCKET =
+            entry -> entry.getUrgency() != null ? entry.getUrgency().ordinal() : -1;
+
+    private final long id;
+    private final long sortKey;
+    private final long createdMillis;
+    private final byte priority;
+    private final byte bloodType;
+    private final byte urgency;
+    private final double[] componentVolumes;
+
+    private QueueEntry(long id, long sortKey, long createdMillis, byte priority, byte bloodType, byte urgency,
+                       double[] componentVolumes) {
+        this.id = id;
+        this.sortKey = sortKey;
+        this.createdMillis = createdMillis;
+        this.priority = priority;
+        this.bloodType = bloodType;
+        this.urgency = urgency;
+        this.componentVolumes = componentVolumes;
+    }
+
+    public static QueueEntry of(BloodRequestDto request) {
+        double[] volumes = new double[ComponentType.values().length];
+        if (request.getComponentRequests() != null) {
+            for (ComponentRequestDto compReq : request.getComponentRequests()) {
+                if (compReq.getComponentType() != null) {
+                    volumes[compReq.getComponentType().ordinal()] += compReq.getVolume();
+                }
+            }
+        }
+        return of(request.getId(), request.calculatePriority(), request.getCreatedTime(), request.getRequiredDate(),
+                request.getBloodType(), request.getUrgency(), volumes);
+    }
+
+    /**
+     * @param requiredDate     date the blood is needed by, or null when there is none
+     * @param componentVolumes requested volume indexed by {@link ComponentType#ordinal()}; kept, not copied
+     */
+    public static QueueEntry of(Long id, int priority, LocalDateTime createdTime, LocalDate requiredDate,
+                                BloodType bloodType, Urgency urgency, double[] componentVolumes) {
+        long createdMillis = createdTime != null
+                ? createdTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0;
+        int boundedPriority = Math.max(0, Math.min(priority, BloodRequestDto.MAX_PRIORITY));
+        return new QueueEntry(
+                id,
+                AllocationPolicy.schedulingKey(boundedPriority, createdMillis, requiredDate),
+                createdMillis,
+                (byte) boundedPriority,
+                (byte) (bloodType != null ? bloodType.ordinal() : -1),
+                (byte) (urgency != null ? urgency.ordinal() : -1),
+                componentVolumes);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getSortKey() {
+        return sortKey;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public BloodType getBloodType() {
+        return bloodType >= 0 ? BLOOD_TYPES[bloodType] : null;
+    }
+
+    public Urgency getUrgency() {
+        return urgency >= 0 ? URGENCIES[urgency] : null;
+    }
+
+    public double getVolume(ComponentType componentType) {
+        return componentVolumes[componentType.ordinal()];
+    }
+
+    /**
+     * Requested volume per component, indexed by {@link ComponentType#ordinal()}. Do not modify.
+     */
+    public double[] getComponentVolumes() {
+        return componentVolumes;
+    }
+
+    public boolean requests(ComponentType componentType) {
+        return componentVolumes[componentType.ordinal()] > 0;
+    }
+}
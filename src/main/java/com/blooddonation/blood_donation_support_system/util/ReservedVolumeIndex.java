@@ -0,0 +1,65 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Volume held by processing requests, kept as prefix sums over priority per ledger cell. A hold
+ * may span compatible donor types, so it is indexed by the cells it actually holds rather than by
+ * the request's own blood type. {@code reservedBelow} is a single array read; adding or removing
+ * a request touches at most {@code MAX_PRIORITY} buckets per cell.
+ */
+public class ReservedVolumeIndex {
+    private static final int PRIORITY_LEVELS = BloodRequestDto.MAX_PRIORITY + 2;
+
+    // below[p][cell] = volume held in cell by requests with priority < p
+    private final double[][] below = new double[PRIORITY_LEVELS][StockLedger.CELL_COUNT];
+    private final Map<Long, Reservation> reservations = new HashMap<>();
+
+    private record Reservation(int priority, double[] held) {
+    }
+
+    /**
+     * @param held volume per ledger cell held for {@code request}, replacing any earlier entry
+     */
+    public synchronized void add(QueueEntry request, double[] held) {
+        remove(request.getId());
+        if (held == null) return;
+        Reservation reservation = new Reservation(request.getPriority(), held.clone());
+        reservations.put(request.getId(), reservation);
+        apply(reservation, 1);
+    }
+
+    public synchronized void remove(Long requestId) {
+        Reservation reservation = reservations.remove(requestId);
+        if (reservation != null) apply(reservation, -1);
+    }
+
+    /**
+     * Volume of {@code cell} held by requests with priority below {@code priority}.
+     */
+    public synchronized double reservedBelow(int cell, int priority) {
+        int p = Math.max(0, Math.min(priority, PRIORITY_LEVELS - 1));
+        return below[p][cell];
+    }
+
+    /**
+     * Volume per ledger cell held by {@code requestId}, or null when it holds nothing.
+     */
+    public synchronized double[] heldBy(Long requestId) {
+        Reservation reservation = reservations.get(requestId);
+        return reservation != null ? reservation.held().clone() : null;
+    }
+
+    private void apply(Reservation reservation, int sign) {
+        double[] held = reservation.held();
+        for (int p = reservation.priority() + 1; p < PRIORITY_LEVELS; p++) {
+            for (int cell = 0; cell < held.length; cell++) {
+                below[p][cell] += sign * held[cell];
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.blooddonation.blood_donation_support_system.validator;
+
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BloodRequestValidator {
+
+    public void validateNewBloodRequest(BloodRequestDto bloodRequestDto) {
+        if (bloodRequestDto == null) {
+            throw new RuntimeException("Blood request is required");
+        }
+        if (bloodRequestDto.getProfile() == null && bloodRequestDto.getProfileId() == null) {
+            throw new RuntimeException("Either profileId or profile is required");
+        }
+        if (bloodRequestDto.getBloodType() == null) {
+            throw new RuntimeException("Blood type is required");
+        }
+        if (bloodRequestDto.getUrgency() == null) {
+            throw new RuntimeException("Urgency is required");
+        }
+        if (bloodRequestDto.getComponentRequests() == null || bloodRequestDto.getComponentRequests().isEmpty()) {
+            throw new RuntimeException("At least one component request is required");
+        }
+        for (ComponentRequestDto componentRequest : bloodRequestDto.getComponentRequests()) {
+            if (componentRequest.getComponentType() == null || componentRequest.getVolume() <= 0) {
+                throw new RuntimeException("Component requests need a component type and a positive volume");
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.entity.BloodRequest;
+import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
+import com.blooddonation.blood_donation_support_system.entity.Profile;
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.ProfileRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockHoldRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two cluster nodes sharing one embedded database, each with its own lease manager and stock
+ * ledger created next to the application's: lease claim, renewal and hand-off after expiry,
+ * SKIP LOCKED claiming past rows another node has locked, and a hold restored by the node that
+ * took the request over after the old owner forgot it.
+ * Tagged {@code stress} with the other database-backed tests; run with {@code mvn test -Pstress}.
+ */
+@SpringBootTest(properties = {
+        "blood-request.cluster.enabled=true",
+        "blood-request.cluster.lease-seconds=" + ClusterHandOffTest.LEASE_SECONDS,
+        // Keep the application's own node from claiming the requests created here
+        "blood-request.cluster.claim-interval-ms=3600000"
+})
+@ActiveProfiles("stress")
+@Tag("stress")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ClusterHandOffTest {
+    static final int LEASE_SECONDS = 2;
+    private static final double EPSILON = 1e-6;
+    private static final Duration TTL = Duration.ofMinutes(30);
+    private static final int CELL = StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.PLASMA);
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private BloodRequestRepository bloodRequestRepository;
+    @Autowired
+    private ProfileRepository profileRepository;
+    @Autowired
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    @Autowired
+    private StockHoldRepository stockHoldRepository;
+
+    private Profile profile;
+
+    @BeforeEach
+    void setUp() {
+        profile = profileRepository.save(Profile.builder().name("Cluster Test").build());
+    }
+
+    @Test
+    void leasesAreRenewedByTheirOwnerAndTakenOverOnceTheyLapse() throws InterruptedException {
+        BloodRequestLeaseManager nodeA = node();
+        BloodRequestLeaseManager nodeB = node();
+        List<Long> ids = createRequests(3);
+
+        assertEquals(ids, nodeA.claim());
+        assertTrue(nodeB.claim().isEmpty());
+        assertTrue(nodeA.transition(ids.get(0), BloodRequestStatus.PROCESSING));
+        assertFalse(nodeB.transition(ids.get(1), BloodRequestStatus.PROCESSING));
+
+        // Renewing just before the lease runs out keeps it out of the claim pool
+        Thread.sleep(TimeUnit.SECONDS.toMillis(LEASE_SECONDS) - 500);
+        assertEquals(3, nodeA.renew());
+        Thread.sleep(1000);
+        assertTrue(nodeB.claim().isEmpty());
+
+        // Node A stops renewing, as if it died; node B takes over every lapsed request
+        Thread.sleep(TimeUnit.SECONDS.toMillis(LEASE_SECONDS) + 500);
+        assertEquals(ids, nodeB.claim());
+        assertFalse(nodeA.transition(ids.get(0), BloodRequestStatus.FULFILLED));
+        assertTrue(nodeB.transition(ids.get(0), BloodRequestStatus.FULFILLED));
+        assertEquals(0, nodeA.renew());
+        assertEquals(BloodRequestStatus.FULFILLED, bloodRequestRepository.findById(ids.get(0)).orElseThrow().getStatus());
+    }
+
+    @Test
+    void claimingSkipsRowsAnotherNodeHasLocked() throws Exception {
+        BloodRequestLeaseManager nodeB = node();
+        List<Long> ids = createRequests(3);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Node A is half way through claiming the first request: its row is locked but not yet
+        // leased. Locked by id, since H2 locks every row it scans before applying a LIMIT
+        CompletableFuture<List<Long>> nodeAClaim = CompletableFuture.supplyAsync(() ->
+                new TransactionTemplate(transactionManager).execute(status -> {
+                    List<Long> lockedIds = jdbcTemplate.queryForList(
+                            "SELECT id FROM blood_request WHERE id = ? FOR UPDATE", Long.class, ids.get(0));
+                    locked.countDown();
+                    try {
+                        done.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return lockedIds;
+                }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        List<Long> claimed = assertTimeoutPreemptively(Duration.ofSeconds(5), nodeB::claim);
+        done.countDown();
+        assertEquals(List.of(ids.get(0)), nodeAClaim.get(10, TimeUnit.SECONDS));
+        assertEquals(ids.subList(1, 3), claimed);
+    }
+
+    @Test
+    void aForgottenHoldIsRestoredByTheNewOwnerAndCommittedOnce() {
+        MedicalFacilityStock lot = medicalFacilityStockRepository.save(MedicalFacilityStock.builder()
+                .bloodType(BloodType.O_NEGATIVE)
+                .componentType(ComponentType.PLASMA)
+                .volume(100.0)
+                .expiryDate(LocalDate.now().plusDays(10))
+                .build());
+        StockLedger ledgerA = ledger();
+        StockLedger ledgerB = ledger();
+        Long requestId = createRequests(1).get(0);
+        double[] componentVolumes = new double[ComponentType.values().length];
+        componentVolumes[ComponentType.PLASMA.ordinal()] = 60;
+
+        assertTrue(ledgerA.hold(requestId, BloodType.O_NEGATIVE, componentVolumes, TTL));
+        assertEquals(40, ledgerA.snapshot()[CELL], EPSILON);
+        ledgerB.refresh();
+        assertEquals(40, ledgerB.snapshot()[CELL], EPSILON);
+        // The persisted hold keeps node B from double-booking the held volume
+        assertFalse(ledgerB.hold(requestId + 1, BloodType.O_NEGATIVE, componentVolumes, TTL));
+
+        // Node A loses the request; the hold stays in the database for whoever claims it next
+        ledgerA.forget(requestId);
+        assertFalse(ledgerA.isHeld(requestId));
+        ledgerA.refresh();
+        assertEquals(40, ledgerA.snapshot()[CELL], EPSILON);
+        assertFalse(stockHoldRepository.findByRequestId(requestId).isEmpty());
+
+        assertTrue(ledgerB.restore(requestId, BloodType.O_NEGATIVE, componentVolumes, TTL));
+        assertEquals(60, ledgerB.heldBy(requestId)[CELL], EPSILON);
+        assertEquals(40, ledgerB.snapshot()[CELL], EPSILON);
+        assertTrue(ledgerB.commit(requestId));
+        assertFalse(ledgerA.commit(requestId));
+
+        assertTrue(stockHoldRepository.findByRequestId(requestId).isEmpty());
+        assertEquals(40, medicalFacilityStockRepository.findById(lot.getId()).orElseThrow().getVolume(), EPSILON);
+        ledgerA.refresh();
+        assertEquals(40, ledgerA.snapshot()[CELL], EPSILON);
+    }
+
+    // A node of its own: fresh node id, same database
+    private BloodRequestLeaseManager node() {
+        return beanFactory.createBean(BloodRequestLeaseManager.class);
+    }
+
+    private StockLedger ledger() {
+        return beanFactory.createBean(StockLedger.class);
+    }
+
+    private List<Long> createRequests(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(bloodRequestRepository.save(BloodRequest.builder()
+                    .profile(profile)
+                    .status(BloodRequestStatus.PENDING)
+                    .createdTime(LocalDateTime.now())
+                    .urgency(Urgency.LOW)
+                    .bloodType(BloodType.O_NEGATIVE)
+                    .build()).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,185 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.event.StockHoldShortenedEvent;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockHoldRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Single-node ledger: holds, transfers, commits and FEFO lot consumption against the in-memory
+ * lot index, with the database and event publisher mocked out.
+ */
+@ExtendWith(MockitoExtension.class)
+class StockLedgerTest {
+    private static final double EPSILON = 1e-6;
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 10);
+    private static final Duration TTL = Duration.ofMinutes(10);
+    private static final int CELL = StockLedger.cellOf(BloodType.A_POSITIVE, ComponentType.PLASMA);
+
+    @Mock
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    @Mock
+    private StockHoldRepository stockHoldRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private StockMovementLog stockMovementLog;
+    @Mock
+    private OptimisticRetryExecutor retryExecutor;
+    @InjectMocks
+    private StockLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        setToday(TODAY);
+    }
+
+    @Test
+    void holdTakesVolumeOffTheCellAndReleaseReturnsIt() {
+        ledger.putLot(lot(1L, 100, TODAY.plusDays(5)));
+
+        assertTrue(ledger.hold(10L, demand(60), TTL));
+        assertEquals(40, ledger.snapshot()[CELL], EPSILON);
+        assertFalse(ledger.hold(11L, demand(50), TTL));
+
+        assertTrue(ledger.release(10L));
+        assertEquals(100, ledger.snapshot()[CELL], EPSILON);
+        assertFalse(ledger.isHeld(10L));
+    }
+
+    @Test
+    void replacingAHoldCreditsTheOldOneBack() {
+        ledger.putLot(lot(1L, 100, TODAY.plusDays(5)));
+        assertTrue(ledger.hold(10L, demand(60), TTL));
+
+        assertTrue(ledger.hold(10L, demand(90), TTL));
+        assertEquals(10, ledger.snapshot()[CELL], EPSILON);
+        // A replacement that does not fit leaves the old hold in place
+        assertFalse(ledger.hold(10L, demand(120), TTL));
+        assertEquals(90, ledger.heldBy(10L)[CELL], EPSILON);
+    }
+
+    @Test
+    void transferMovesHeldVolumeToTheNewOwner() {
+        ledger.putLot(lot(1L, 100, TODAY.plusDays(5)));
+        assertTrue(ledger.hold(10L, demand(70), TTL));
+
+        double[] componentVolumes = new double[ComponentType.values().length];
+        componentVolumes[ComponentType.PLASMA.ordinal()] = 80;
+        assertTrue(ledger.transfer(List.of(10L), 20L, BloodType.A_POSITIVE, componentVolumes, TTL));
+
+        assertFalse(ledger.isHeld(10L));
+        assertEquals(80, ledger.heldBy(20L)[CELL], EPSILON);
+        assertEquals(20, ledger.snapshot()[CELL], EPSILON);
+    }
+
+    @Test
+    void commitConsumesTheEarliestExpiringLotFirst() {
+        ledger.putLot(lot(1L, 50, TODAY.plusDays(9)));
+        ledger.putLot(lot(2L, 50, TODAY.plusDays(2)));
+        assertTrue(ledger.hold(10L, demand(70), TTL));
+
+        assertTrue(ledger.commit(10L));
+        assertFalse(ledger.isHeld(10L));
+        assertEquals(30, ledger.snapshot()[CELL], EPSILON);
+        // Lot 2 is gone, so removing it changes nothing; lot 1 keeps the remaining 30
+        ledger.removeLot(lot(2L, 50, TODAY.plusDays(2)));
+        assertEquals(30, ledger.snapshot()[CELL], EPSILON);
+        ledger.removeLot(lot(1L, 50, TODAY.plusDays(9)));
+        assertEquals(0, ledger.snapshot()[CELL], EPSILON);
+    }
+
+    @Test
+    void releasingAHoldWhoseLotExpiredDoesNotBringTheVolumeBack() {
+        ledger.putLot(lot(1L, 100, TODAY.plusDays(1)));
+        assertTrue(ledger.hold(10L, demand(60), TTL));
+
+        setToday(TODAY.plusDays(2));
+        // Any hold attempt on the cell drops the expired lot
+        assertFalse(ledger.hold(11L, demand(1), TTL));
+        assertEquals(0, ledger.heldBy(10L)[CELL], EPSILON);
+
+        assertTrue(ledger.release(10L));
+        assertEquals(0, ledger.snapshot()[CELL], EPSILON);
+        assertFalse(ledger.tryWithdraw(demand(1)));
+    }
+
+    @Test
+    void committingAHoldWhoseLotExpiredFailsWithoutOwingTheDatabase() {
+        ledger.putLot(lot(1L, 100, TODAY.plusDays(1)));
+        ledger.putLot(lot(2L, 30, TODAY.plusDays(5)));
+        assertTrue(ledger.hold(10L, demand(60), TTL));
+        assertTrue(ledger.hold(11L, demand(50), TTL.plusMinutes(5)));
+
+        setToday(TODAY.plusDays(2));
+        // 20 unheld goes first, the rest of lot 1 comes out of the later hold before the earlier
+        assertFalse(ledger.commit(11L));
+        assertFalse(ledger.isHeld(11L));
+        assertEquals(0, ledger.snapshot()[CELL], EPSILON);
+        assertFalse(ledger.commit(10L));
+        assertEquals(30, ledger.snapshot()[CELL], EPSILON);
+
+        // Only lot 2 is left to withdraw from, so the flush owes nothing beyond it
+        assertTrue(ledger.tryWithdraw(demand(30)));
+        assertFalse(ledger.tryWithdraw(demand(1)));
+    }
+
+    @Test
+    void removingAHeldLotShrinksTheHold() {
+        ledger.putLot(lot(1L, 40, TODAY.plusDays(3)));
+        ledger.putLot(lot(2L, 40, TODAY.plusDays(4)));
+        assertTrue(ledger.hold(10L, demand(70), TTL));
+
+        ledger.removeLot(lot(2L, 40, TODAY.plusDays(4)));
+        assertEquals(0, ledger.snapshot()[CELL], EPSILON);
+        assertEquals(40, ledger.heldBy(10L)[CELL], EPSILON);
+        verify(eventPublisher).publishEvent(argThat((Object event) ->
+                event instanceof StockHoldShortenedEvent shortened && shortened.getRequestId() == 10L));
+        assertFalse(ledger.commit(10L));
+        assertEquals(40, ledger.snapshot()[CELL], EPSILON);
+    }
+
+    private void setToday(LocalDate date) {
+        ledger.setClock(Clock.fixed(date.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+    }
+
+    private static MedicalFacilityStock lot(Long id, double volume, LocalDate expiryDate) {
+        return MedicalFacilityStock.builder()
+                .id(id)
+                .volume(volume)
+                .bloodType(BloodType.A_POSITIVE)
+                .componentType(ComponentType.PLASMA)
+                .expiryDate(expiryDate)
+                .build();
+    }
+
+    private static double[] demand(double volume) {
+        double[] demand = new double[StockLedger.CELL_COUNT];
+        demand[CELL] = volume;
+        return demand;
+    }
+}
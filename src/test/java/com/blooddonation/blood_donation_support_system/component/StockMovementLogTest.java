@@ -0,0 +1,105 @@
+package com.blooddonation.blood_donation_support_system.component;
+
+import com.blooddonation.blood_donation_support_system.entity.StockSnapshot;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockMovementRepository;
+import com.blooddonation.blood_donation_support_system.repository.StockSnapshotRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Snapshot arithmetic against mocked repositories: opening the first snapshot from the stock
+ * table and folding the tail into later ones.
+ */
+@ExtendWith(MockitoExtension.class)
+class StockMovementLogTest {
+    private static final double EPSILON = 1e-6;
+    private static final int CELL = StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.PLASMA);
+
+    @Mock
+    private StockMovementRepository stockMovementRepository;
+    @Mock
+    private StockSnapshotRepository stockSnapshotRepository;
+    @Mock
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @InjectMocks
+    private StockMovementLog movementLog;
+
+    @BeforeEach
+    void setUp() {
+        movementLog.setTransactionManager(transactionManager);
+    }
+
+    @Test
+    void firstSnapshotLeavesMovementsInsideTheLagToTheTail() {
+        when(stockSnapshotRepository.findLatest()).thenReturn(List.of());
+        when(medicalFacilityStockRepository.sumVolumes()).thenReturn(sums(500));
+        when(stockMovementRepository.sumVolumesSince(any())).thenReturn(sums(50));
+
+        movementLog.snapshot();
+
+        List<StockSnapshot> saved = savedSnapshot();
+        LocalDateTime coveredUntil = saved.get(0).getCoveredUntil();
+        verify(stockMovementRepository).sumVolumesSince(coveredUntil);
+        assertEquals(450, volumeOf(saved), EPSILON);
+        verify(stockSnapshotRepository).deleteCoveredBefore(any());
+    }
+
+    @Test
+    void laterSnapshotsAddTheMovementsSinceTheLatestOne() {
+        LocalDateTime previous = LocalDateTime.now().minusHours(1);
+        when(stockSnapshotRepository.findLatest()).thenReturn(List.of(StockSnapshot.builder()
+                .coveredUntil(previous)
+                .bloodType(BloodType.O_NEGATIVE)
+                .componentType(ComponentType.PLASMA)
+                .volume(300.0)
+                .build()));
+        when(stockMovementRepository.sumVolumesBetween(any(), any())).thenReturn(sums(-120));
+
+        movementLog.snapshot();
+
+        List<StockSnapshot> saved = savedSnapshot();
+        verify(stockMovementRepository).sumVolumesBetween(previous, saved.get(0).getCoveredUntil());
+        assertEquals(180, volumeOf(saved), EPSILON);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<StockSnapshot> savedSnapshot() {
+        ArgumentCaptor<List<StockSnapshot>> rows = ArgumentCaptor.forClass(List.class);
+        verify(stockSnapshotRepository).saveAll(rows.capture());
+        assertEquals(StockLedger.CELL_COUNT, rows.getValue().size());
+        return rows.getValue();
+    }
+
+    private static double volumeOf(List<StockSnapshot> snapshot) {
+        return snapshot.stream()
+                .filter(row -> StockLedger.cellOf(row.getBloodType(), row.getComponentType()) == CELL)
+                .mapToDouble(StockSnapshot::getVolume)
+                .sum();
+    }
+
+    private static List<Object[]> sums(double volume) {
+        List<Object[]> sums = new ArrayList<>();
+        sums.add(new Object[]{BloodType.O_NEGATIVE, ComponentType.PLASMA, volume});
+        return sums;
+    }
+}
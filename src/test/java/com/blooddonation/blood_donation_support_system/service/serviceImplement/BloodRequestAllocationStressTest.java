@@ -0,0 +1,361 @@
+package com.blooddonation.blood_donation_support_system.service.serviceImplement;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.MedicalFacilityStockDto;
+import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
+import com.blooddonation.blood_donation_support_system.entity.Profile;
+import com.blooddonation.blood_donation_support_system.enums.BloodRequestStatus;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.repository.ProfileRepository;
+import com.blooddonation.blood_donation_support_system.service.IBloodRequestService;
+import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Hammers request intake, the fulfillment and pending workers, manual fulfillment and stock
+ * arrivals concurrently against an embedded database, then checks the engine's invariants once
+ * the workers have gone quiet:
+ * <ul>
+ *     <li>no stock row and no ledger cell ever goes negative</li>
+ *     <li>no request sits in both queues, and queue membership matches the stored status</li>
+ *     <li>per cell, the database holds exactly what the ledger has unheld plus held</li>
+ *     <li>volume is conserved: what arrived is either still in stock or went to a fulfilled request</li>
+ * </ul>
+ * Tagged {@code stress} and excluded from the default build; run with {@code mvn test -Pstress}.
+ */
+@SpringBootTest
+@ActiveProfiles("stress")
+@Tag("stress")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Slf4j
+class BloodRequestAllocationStressTest {
+    private static final int THREADS = 32;
+    private static final int REQUESTS = 400;
+    private static final int STOCK_ARRIVALS = 300;
+    private static final int EXPORTED_REQUESTS = 1234;
+    private static final double EPSILON = 1e-6;
+    private static final long QUIESCENCE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final BloodType[] BLOOD_TYPES = BloodType.values();
+    private static final ComponentType[] COMPONENT_TYPES = ComponentType.values();
+    private static final Urgency[] URGENCIES = Urgency.values();
+
+    @Autowired
+    private IBloodRequestService bloodRequestService;
+    @Autowired
+    private MedicalFacilityStockService medicalFacilityStockService;
+    @Autowired
+    private StockLedger stockLedger;
+    @Autowired
+    private ProfileRepository profileRepository;
+    @Autowired
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Random random = new Random(19);
+    private Long profileId;
+
+    @BeforeEach
+    void setUp() {
+        profileId = profileRepository.save(Profile.builder().name("Stress Test").build()).getId();
+    }
+
+    /**
+     * HIGH urgency only, so every request that gets stock is fulfilled without delay and the
+     * conservation check can be exact. Varying pregnancy and disability flags keeps preemption busy.
+     */
+    @Test
+    void concurrentIntakeAndStockArrivalsConserveVolume() throws Exception {
+        List<Callable<?>> tasks = new ArrayList<>();
+        double arrived = 0;
+        for (int i = 0; i < STOCK_ARRIVALS; i++) {
+            MedicalFacilityStockDto stock = randomStock();
+            arrived += stock.getVolume();
+            tasks.add(() -> medicalFacilityStockService.addBloodIntoStock(stock));
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            BloodRequestDto request = randomRequest(Urgency.HIGH);
+            tasks.add(() -> bloodRequestService.createBloodRequest(request));
+        }
+
+        long elapsed = runConcurrently(tasks);
+        awaitQuiescence(true);
+        report("intake and stock arrivals", tasks.size(), elapsed);
+
+        assertNoNegativeStock();
+        assertQueuesMatchStatuses(false);
+        assertLedgerMatchesDatabase();
+        double[] held = stockLedger.heldSnapshot();
+        for (double volume : held) assertEquals(0, volume, EPSILON, "HIGH requests should not be left holding stock");
+        assertEquals(arrived, databaseStock() + fulfilledVolume(), 1e-3,
+                "Every arrived unit is either in stock or went to a fulfilled request");
+    }
+
+    /**
+     * Mixed urgencies, with a third of the created requests also fulfilled by hand while the
+     * workers may be fulfilling, re-queuing or preempting them. Manual fulfillment of a pending
+     * request consumes no stock, so conservation is checked as an upper bound.
+     */
+    @Test
+    void manualFulfillmentRacingWorkersKeepsStockConsistent() throws Exception {
+        BlockingQueue<BloodRequestDto> created = new LinkedBlockingQueue<>();
+        List<Callable<?>> tasks = new ArrayList<>();
+        double arrived = 0;
+        for (int i = 0; i < STOCK_ARRIVALS; i++) {
+            MedicalFacilityStockDto stock = randomStock();
+            arrived += stock.getVolume();
+            tasks.add(() -> medicalFacilityStockService.addBloodIntoStock(stock));
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            BloodRequestDto request = randomRequest(URGENCIES[random.nextInt(URGENCIES.length)]);
+            tasks.add(() -> {
+                BloodRequestDto saved = bloodRequestService.createBloodRequest(request);
+                created.add(saved);
+                return saved;
+            });
+        }
+        for (int i = 0; i < REQUESTS / 3; i++) {
+            tasks.add(() -> {
+                BloodRequestDto request = created.poll(10, TimeUnit.SECONDS);
+                return request != null ? bloodRequestService.fulfillBloodRequest(request) : null;
+            });
+        }
+
+        long elapsed = runConcurrently(tasks);
+        awaitQuiescence(false);
+        report("intake, manual fulfillment and stock arrivals", tasks.size(), elapsed);
+
+        assertNoNegativeStock();
+        assertQueuesMatchStatuses(true);
+        assertLedgerMatchesDatabase();
+        double withdrawn = arrived - databaseStock();
+        assertTrue(withdrawn > -EPSILON, "Stock grew beyond what arrived");
+        assertTrue(withdrawn <= fulfilledVolume() + 1e-3, "More stock was withdrawn than fulfilled requests asked for");
+    }
+
+    /**
+     * Manual requests only, so the workers leave them alone. The export spans several pages and
+     * must read each page with a fixed number of statements rather than one per request.
+     */
+    @Test
+    void exportWritesEveryRequestOncePageByPage() throws Exception {
+        List<BloodRequestDto> requests = new ArrayList<>();
+        for (int i = 0; i < EXPORTED_REQUESTS; i++) {
+            BloodRequestDto request = randomRequest(Urgency.LOW);
+            request.setAutomation(false);
+            requests.add(request);
+        }
+        bloodRequestService.createBloodRequests(requests);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bloodRequestService.exportBloodRequests(null, out);
+        long statements = statistics.getPrepareStatementCount();
+
+        List<Long> ids = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            BloodRequestDto exported = objectMapper.readValue(line, BloodRequestDto.class);
+            assertFalse(exported.getComponentRequests().isEmpty(), "Request " + exported.getId() + " lost its components");
+            assertEquals(profileId, exported.getProfile().getId());
+            ids.add(exported.getId());
+        }
+        assertEquals(EXPORTED_REQUESTS, ids.size());
+        assertEquals(ids.stream().sorted().distinct().toList(), ids);
+        assertTrue(statements < 30, "Export took " + statements + " statements for " + EXPORTED_REQUESTS + " requests");
+    }
+
+    /**
+     * Runs the tasks in shuffled order on {@link #THREADS} threads released together, sampling
+     * the stock for negative volumes while they run. Returns the wall time in nanoseconds.
+     */
+    private long runConcurrently(List<Callable<?>> tasks) throws Exception {
+        Collections.shuffle(tasks, random);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Callable<?> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        while (!executor.awaitTermination(50, TimeUnit.MILLISECONDS)) {
+            assertNoNegativeStock();
+        }
+        long elapsed = System.nanoTime() - started;
+        for (Future<?> future : futures) future.get();
+        return elapsed;
+    }
+
+    /**
+     * Waits until no stock change is waiting for the pending worker and the queues have stopped
+     * moving, then flushes the ledger so the database is current.
+     */
+    private void awaitQuiescence(boolean processingDrained) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + QUIESCENCE_TIMEOUT_MS;
+        Set<Long> lastPending = null;
+        Set<Long> lastProcessing = null;
+        while (System.currentTimeMillis() < deadline) {
+            Set<Long> pending = engine().pendingQueueIds();
+            Set<Long> processing = engine().processingQueueIds();
+            boolean settled = !engine().hasQueuedStockChanges()
+                    && (!processingDrained || processing.isEmpty())
+                    && pending.equals(lastPending) && processing.equals(lastProcessing);
+            if (settled) {
+                stockLedger.flush();
+                return;
+            }
+            lastPending = pending;
+            lastProcessing = processing;
+            Thread.sleep(250);
+        }
+        fail("Workers did not settle within " + QUIESCENCE_TIMEOUT_MS + " ms");
+    }
+
+    private void assertNoNegativeStock() {
+        for (MedicalFacilityStock stock : medicalFacilityStockRepository.findAll()) {
+            assertTrue(stock.getVolume() > -EPSILON, "Stock lot " + stock.getId() + " went negative: " + stock.getVolume());
+        }
+        for (double volume : stockLedger.snapshot()) {
+            assertTrue(volume > -EPSILON, "Ledger cell went negative: " + volume);
+        }
+    }
+
+    /**
+     * @param manualFulfillment whether requests may have been fulfilled by hand, which leaves no
+     *                          trace in the queues but may race a worker re-queuing the same request
+     */
+    private void assertQueuesMatchStatuses(boolean manualFulfillment) {
+        Set<Long> pending = engine().pendingQueueIds();
+        Set<Long> processing = engine().processingQueueIds();
+        Set<Long> both = new HashSet<>(pending);
+        both.retainAll(processing);
+        assertTrue(both.isEmpty(), "Requests in both queues: " + both);
+
+        for (BloodRequestDto request : bloodRequestService.findAllBloodRequest()) {
+            if (!request.isAutomation()) continue;
+            Long id = request.getId();
+            if (request.getStatus() == BloodRequestStatus.PROCESSING) {
+                assertTrue(processing.contains(id), "PROCESSING request " + id + " is not in the processing queue");
+            } else if (request.getStatus() == BloodRequestStatus.PENDING) {
+                assertTrue(pending.contains(id), "PENDING request " + id + " is not in the pending queue");
+            } else if (!manualFulfillment) {
+                assertTrue(!pending.contains(id) && !processing.contains(id),
+                        request.getStatus() + " request " + id + " is still queued");
+            }
+        }
+    }
+
+    private void assertLedgerMatchesDatabase() {
+        double[] database = new double[StockLedger.CELL_COUNT];
+        for (MedicalFacilityStock stock : medicalFacilityStockRepository.findAll()) {
+            database[StockLedger.cellOf(stock.getBloodType(), stock.getComponentType())] += stock.getVolume();
+        }
+        double[] unheld = stockLedger.snapshot();
+        double[] held = stockLedger.heldSnapshot();
+        for (int cell = 0; cell < database.length; cell++) {
+            assertEquals(database[cell], unheld[cell] + held[cell], 1e-3,
+                    "Ledger and database disagree on " + StockLedger.bloodTypeOf(cell) + " " + StockLedger.componentTypeOf(cell));
+        }
+    }
+
+    private double databaseStock() {
+        return medicalFacilityStockRepository.findAll().stream().mapToDouble(MedicalFacilityStock::getVolume).sum();
+    }
+
+    private double fulfilledVolume() {
+        return bloodRequestService.findAllBloodRequest().stream()
+                .filter(request -> request.isAutomation() && request.getStatus() == BloodRequestStatus.FULFILLED)
+                .flatMap(request -> request.getComponentRequests().stream())
+                .mapToDouble(ComponentRequestDto::getVolume)
+                .sum();
+    }
+
+    private void report(String scenario, int operations, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        log.info("Stress [{}]: {} operations on {} threads in {} ms, {} ops/s", scenario, operations, THREADS,
+                String.format("%.0f", seconds * 1000), String.format("%.1f", operations / seconds));
+    }
+
+    private BloodRequestDto randomRequest(Urgency urgency) {
+        List<ComponentRequestDto> components = new ArrayList<>();
+        for (ComponentType componentType : COMPONENT_TYPES) {
+            if (components.isEmpty() || random.nextInt(4) == 0) {
+                components.add(ComponentRequestDto.builder()
+                        .componentType(componentType)
+                        .volume(100 + random.nextInt(5) * 50)
+                        .build());
+            }
+        }
+        return BloodRequestDto.builder()
+                .profileId(profileId)
+                .urgency(urgency)
+                .bloodType(BLOOD_TYPES[random.nextInt(BLOOD_TYPES.length)])
+                .componentRequests(components)
+                .isPregnant(random.nextInt(5) == 0)
+                .isDisabled(random.nextInt(5) == 0)
+                .isAutomation(true)
+                .build();
+    }
+
+    private MedicalFacilityStockDto randomStock() {
+        return MedicalFacilityStockDto.builder()
+                .bloodType(BLOOD_TYPES[random.nextInt(BLOOD_TYPES.length)])
+                .componentType(COMPONENT_TYPES[random.nextInt(COMPONENT_TYPES.length)])
+                .volume(200.0 + random.nextInt(7) * 50)
+                .expiryDate(LocalDate.now().plusDays(30))
+                .build();
+    }
+
+    // The service is proxied; its queues live on the target
+    private BloodRequestServiceImpl engine() {
+        return AopTestUtils.getUltimateTargetObject(bloodRequestService);
+    }
+}
@@ -0,0 +1,177 @@
+package com.blooddonation.blood_donation_support_system.service.serviceImplement;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.ComponentRequestDto;
+import com.blooddonation.blood_donation_support_system.dto.DemandForecastDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.repository.BloodRequestRepository;
+import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ring and moving-average bookkeeping of the in-memory forecast and its checkpoint replay, driven
+ * by a fixed clock.
+ */
+@ExtendWith(MockitoExtension.class)
+class DemandForecastServiceImplTest {
+    private static final double EPSILON = 1e-6;
+    private static final double TREND_ALPHA = 2.0 / (14 + 1);
+    private static final LocalDate START = LocalDate.of(2026, 2, 1);
+    private static final int CELL = StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.PLASMA);
+    private static final Duration REPLAY_OVERLAP = Duration.ofMinutes(10);
+
+    @Mock
+    private BloodRequestRepository bloodRequestRepository;
+    @Mock
+    private MedicalFacilityStockService medicalFacilityStockService;
+    @InjectMocks
+    private DemandForecastServiceImpl forecastService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(medicalFacilityStockService.getStockSnapshot()).thenReturn(new double[StockLedger.CELL_COUNT]);
+        setToday(START);
+    }
+
+    @Test
+    void averagesOverTheDaysObservedSoFar() {
+        record(START, 10);
+        setToday(START.plusDays(1));
+        record(START.plusDays(1), 20);
+
+        DemandForecastDto cell = forecast();
+        assertEquals(30, cell.getWindowDemand(), EPSILON);
+        assertEquals(15, cell.getAverageDailyDemand(), EPSILON);
+        // Only the first day has closed into the trend
+        assertEquals(TREND_ALPHA * 10, cell.getTrendDailyDemand(), EPSILON);
+        assertEquals(0, cell.getDaysOfSupply(), EPSILON);
+        // No demand at all means no estimate rather than an infinite one
+        assertNull(forecastService.getForecast().get(CELL + 1).getDaysOfSupply());
+    }
+
+    @Test
+    void daysLeaveTheWindowWhenTheirSlotIsReused() {
+        record(START, 10);
+        record(START.plusDays(1), 5);
+
+        setToday(START.plusDays(DemandForecastServiceImpl.WINDOW_DAYS - 1));
+        assertEquals(15, forecast().getWindowDemand(), EPSILON);
+        setToday(START.plusDays(DemandForecastServiceImpl.WINDOW_DAYS));
+        assertEquals(5, forecast().getWindowDemand(), EPSILON);
+        setToday(START.plusDays(3L * DemandForecastServiceImpl.WINDOW_DAYS));
+        assertEquals(0, forecast().getWindowDemand(), EPSILON);
+
+        // Demand for a day already out of the window is dropped
+        record(START, 100);
+        assertEquals(0, forecast().getWindowDemand(), EPSILON);
+    }
+
+    @Test
+    void trendFoldsInEachClosedDayIncludingQuietOnes() {
+        double expected = 0;
+        for (int day = 0; day < 10; day++) {
+            double volume = day < 5 ? 40 : 0;
+            setToday(START.plusDays(day));
+            record(START.plusDays(day), volume);
+            if (day > 0) expected = TREND_ALPHA * (day - 1 < 5 ? 40 : 0) + (1 - TREND_ALPHA) * expected;
+        }
+        assertEquals(expected, forecast().getTrendDailyDemand(), EPSILON);
+
+        // Skipping ahead closes every day in between, one at a time
+        setToday(START.plusDays(20));
+        for (int day = 9; day < 20; day++) expected = (1 - TREND_ALPHA) * expected;
+        assertEquals(expected, forecast().getTrendDailyDemand(), EPSILON);
+    }
+
+    @Test
+    void daysOfSupplyUseTheLargerOfAverageAndTrend() {
+        double[] available = new double[StockLedger.CELL_COUNT];
+        available[CELL] = 300;
+        lenient().when(medicalFacilityStockService.getStockSnapshot()).thenReturn(available);
+        for (int day = 0; day < 30; day++) {
+            setToday(START.plusDays(day));
+            record(START.plusDays(day), day < 28 ? 1 : 200);
+        }
+        setToday(START.plusDays(30));
+
+        DemandForecastDto cell = forecast();
+        double average = cell.getWindowDemand() / 31;
+        assertEquals(average, cell.getAverageDailyDemand(), EPSILON);
+        assertEquals(300 / Math.max(average, cell.getTrendDailyDemand()), cell.getDaysOfSupply(), EPSILON);
+        assertEquals(300 / cell.getTrendDailyDemand(), cell.getDaysOfSupply(), EPSILON);
+    }
+
+    private void record(LocalDate day, double volume) {
+        record(null, day, volume);
+    }
+
+    private void record(Long requestId, LocalDate day, double volume) {
+        ComponentRequestDto compReq = new ComponentRequestDto();
+        compReq.setComponentType(ComponentType.PLASMA);
+        compReq.setVolume(volume);
+        forecastService.recordDemand(requestId, BloodType.O_NEGATIVE, List.of(compReq), day.atTime(9, 30));
+    }
+
+    private static Object[] insertedRow(Long requestId, LocalDate createdDay, double volume) {
+        return new Object[]{requestId, BloodType.O_NEGATIVE, ComponentType.PLASMA, createdDay.atTime(9, 30), volume};
+    }
+
+    /**
+     * Request 2 was counted after the checkpoint and lost with the process; request 3 was inserted
+     * after it but carries a created time from two days earlier. Request 1 is in the checkpoint and
+     * inserted inside the overlap, so the replay sees it again.
+     */
+    @Test
+    void replayAfterACheckpointGoesByInsertTimeAndCountsEachRequestOnce(@TempDir Path dir) {
+        forecastService.setCheckpointFile(dir.resolve("forecast.checkpoint").toString());
+        forecastService.setReplayOverlapMillis(REPLAY_OVERLAP.toMillis());
+        record(1L, START, 10);
+        forecastService.checkpoint();
+        record(2L, START, 20);
+
+        LocalDateTime replayFrom = START.atStartOfDay().minus(REPLAY_OVERLAP);
+        when(bloodRequestRepository.findDemandInsertedSince(replayFrom)).thenReturn(List.of(
+                insertedRow(1L, START, 10),
+                insertedRow(2L, START, 20),
+                insertedRow(3L, START.minusDays(2), 5),
+                insertedRow(3L, START.minusDays(2), 7)));
+        forecastService.warmStart();
+        assertEquals(42, forecast().getWindowDemand(), EPSILON);
+
+        // Intake reporting a replayed request after the fact changes nothing
+        record(3L, START, 12);
+        assertEquals(42, forecast().getWindowDemand(), EPSILON);
+        verify(bloodRequestRepository, never()).sumDailyDemandSince(any());
+    }
+
+    private DemandForecastDto forecast() {
+        return forecastService.getForecast().get(CELL);
+    }
+
+    private void setToday(LocalDate date) {
+        forecastService.setClock(Clock.fixed(date.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+    }
+}
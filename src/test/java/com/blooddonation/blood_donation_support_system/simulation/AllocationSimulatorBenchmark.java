@@ -0,0 +1,82 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a seeded synthetic year through the allocation simulator. Not picked up by surefire;
+ * run {@link #main} on the test classpath, e.g. from the IDE after {@code mvn test-compile}.
+ * Before the JMH run it prints the report of one replay per configuration, so policy changes can
+ * be compared on latency percentiles and waste as well as on replay time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AllocationSimulatorBenchmark {
+    private static final long SEED = 20250101L;
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Param({"true", "false"})
+    public boolean crossType;
+
+    @Param({"365"})
+    public int days;
+
+    @Param({"40"})
+    public int requestsPerDay;
+
+    @Param({"60"})
+    public int lotsPerDay;
+
+    private SyntheticTimeline.Timeline timeline;
+    private AllocationSimulator simulator;
+
+    @Setup
+    public void setUp() {
+        timeline = SyntheticTimeline.generate(SEED, START, days, requestsPerDay, lotsPerDay);
+        simulator = new AllocationSimulator(crossType);
+    }
+
+    @Benchmark
+    public SimulationReport replay() {
+        return simulator.run(timeline.requests(), timeline.stockArrivals());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        SyntheticTimeline.Timeline timeline = SyntheticTimeline.generate(SEED, START, 365, 40, 60);
+        for (boolean crossType : new boolean[]{true, false}) {
+            SimulationReport report = new AllocationSimulator(crossType)
+                    .run(timeline.requests(), timeline.stockArrivals());
+            System.out.println("crossType=" + crossType);
+            report.byUrgency().forEach((urgency, stats) -> System.out.printf(
+                    "  %-6s requests=%d fulfilled=%d p50=%dmin p90=%dmin p99=%dmin%n", urgency,
+                    stats.requests(), stats.fulfilled(), TimeUnit.MILLISECONDS.toMinutes(stats.p50Millis()),
+                    TimeUnit.MILLISECONDS.toMinutes(stats.p90Millis()), TimeUnit.MILLISECONDS.toMinutes(stats.p99Millis())));
+            System.out.printf("  waste=%.1f of %.1f (%.2f%%) preemptions=%d%n", report.wastedVolume(),
+                    report.suppliedVolume(), report.wasteRatio() * 100, report.preemptions());
+        }
+        Options options = new OptionsBuilder()
+                .include(AllocationSimulatorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
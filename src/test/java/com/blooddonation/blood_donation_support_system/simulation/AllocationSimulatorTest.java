@@ -0,0 +1,33 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AllocationSimulatorTest {
+    private static final long SEED = 20250101L;
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Test
+    void theSameSeedReplaysToAnEqualReport() {
+        for (boolean crossType : new boolean[]{true, false}) {
+            AllocationSimulator simulator = new AllocationSimulator(crossType);
+            SimulationReport first = replay(simulator, SEED);
+            // A second timeline from the same seed, on a fresh simulator and on the one already used
+            assertEquals(first, replay(new AllocationSimulator(crossType), SEED));
+            assertEquals(first, replay(simulator, SEED));
+
+            assertTrue(first.fulfilledVolume() > 0);
+            assertNotEquals(first, replay(simulator, SEED + 1));
+        }
+    }
+
+    private static SimulationReport replay(AllocationSimulator simulator, long seed) {
+        SyntheticTimeline.Timeline timeline = SyntheticTimeline.generate(seed, START, 60, 40, 60);
+        return simulator.run(timeline.requests(), timeline.stockArrivals());
+    }
+}
@@ -0,0 +1,167 @@
+package com.blooddonation.blood_donation_support_system.simulation;
+
+import com.blooddonation.blood_donation_support_system.BloodDonationSupportSystemApplication;
+import com.blooddonation.blood_donation_support_system.component.OptimisticRetryExecutor;
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.MedicalFacilityStockDto;
+import com.blooddonation.blood_donation_support_system.entity.MedicalFacilityStock;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.repository.MedicalFacilityStockRepository;
+import com.blooddonation.blood_donation_support_system.service.MedicalFacilityStockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of 32 concurrent writers on a single (BloodType, ComponentType) cell, all landing on
+ * the same lot, against the embedded database of the stress profile:
+ * <ul>
+ *     <li>{@code returns}: 32 threads each adding a unit to the lot, a read-modify-write under
+ *     optimistic versioning run through the stock write retry executor with jittered backoff</li>
+ *     <li>{@code mixed}: 31 returning threads and one thread withdrawing through the stock ledger
+ *     and flushing, whose set-based decrements bump the version under the returns</li>
+ * </ul>
+ * Varying the retry policy shows how far writers on one cell can be scaled before conflicts that
+ * exhaust the retries start to dominate. Each trial ends by checking that the lot holds exactly
+ * what was put in minus what was taken, i.e. that no update was lost, and prints the counts.
+ * <p>
+ * Not picked up by surefire; run {@link #main} on the test classpath, e.g. from the IDE after
+ * {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StockContentionBenchmark {
+    private static final BloodType BLOOD_TYPE = BloodType.O_POSITIVE;
+    private static final ComponentType COMPONENT_TYPE = ComponentType.RED_BLOOD_CELLS;
+    private static final double OPENING_VOLUME = 1_000_000;
+    private static final double UNIT = 1;
+    private static final double EPSILON = 1e-6;
+
+    @Param({"6", "12"})
+    public int maxAttempts;
+
+    @Param({"0", "2", "10"})
+    public long baseDelayMs;
+
+    private ConfigurableApplicationContext context;
+    private MedicalFacilityStockService medicalFacilityStockService;
+    private MedicalFacilityStockRepository medicalFacilityStockRepository;
+    private OptimisticRetryExecutor retryExecutor;
+    private StockLedger stockLedger;
+    private Long lotId;
+    private LocalDate expiryDate;
+    private double[] withdrawal;
+
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong withdrawn = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(BloodDonationSupportSystemApplication.class)
+                .profiles("stress")
+                .properties("stock.retry.max-attempts=" + maxAttempts,
+                        "stock.retry.base-delay-ms=" + baseDelayMs,
+                        "stock.ledger.flush-interval-ms=3600000")
+                .run();
+        medicalFacilityStockService = context.getBean(MedicalFacilityStockService.class);
+        medicalFacilityStockRepository = context.getBean(MedicalFacilityStockRepository.class);
+        retryExecutor = context.getBean(OptimisticRetryExecutor.class);
+        stockLedger = context.getBean(StockLedger.class);
+
+        expiryDate = LocalDate.now().plusDays(30);
+        lotId = medicalFacilityStockService.addBloodIntoStock(MedicalFacilityStockDto.builder()
+                .bloodType(BLOOD_TYPE)
+                .componentType(COMPONENT_TYPE)
+                .volume(OPENING_VOLUME)
+                .expiryDate(expiryDate)
+                .build()).getId();
+        withdrawal = new double[ComponentType.values().length];
+        withdrawal[COMPONENT_TYPE.ordinal()] = UNIT;
+    }
+
+    @TearDown
+    public void tearDown() {
+        stockLedger.flush();
+        MedicalFacilityStock lot = medicalFacilityStockRepository.findById(lotId).orElseThrow();
+        double expected = OPENING_VOLUME + (returned.get() - withdrawn.get()) * UNIT;
+        System.out.printf("%nmaxAttempts=%d baseDelayMs=%d returned=%d withdrawn=%d conflicts=%d lost=%.1f version=%d%n",
+                maxAttempts, baseDelayMs, returned.get(), withdrawn.get(), conflicts.get(),
+                expected - lot.getVolume(), lot.getVersion());
+        if (Math.abs(expected - lot.getVolume()) > EPSILON) {
+            throw new IllegalStateException("Lost stock updates: expected " + expected + " but the lot holds " + lot.getVolume());
+        }
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void returns() {
+        returnUnit();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(31)
+    public void mixedReturns() {
+        returnUnit();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWithdrawals() {
+        if (medicalFacilityStockService.tryWithdrawBloodFromStock(BLOOD_TYPE, withdrawal)) {
+            withdrawn.incrementAndGet();
+        }
+        stockLedger.flush();
+    }
+
+    private void returnUnit() {
+        try {
+            retryExecutor.executeWithoutResult("benchmark-return", () -> {
+                MedicalFacilityStock lot = medicalFacilityStockRepository.findById(lotId).orElseThrow();
+                lot.setVolume(lot.getVolume() + UNIT);
+                medicalFacilityStockRepository.saveAndFlush(lot);
+            });
+            returned.incrementAndGet();
+        } catch (ConcurrencyFailureException e) {
+            conflicts.incrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(StockContentionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
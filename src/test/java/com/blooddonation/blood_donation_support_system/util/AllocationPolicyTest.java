@@ -0,0 +1,155 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.dto.BloodRequestDto;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.blooddonation.blood_donation_support_system.util.ReservedVolumeIndexTest.entry;
+import static com.blooddonation.blood_donation_support_system.util.ReservedVolumeIndexTest.held;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AllocationPolicyTest {
+    private static final int O_NEG_RBC = StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.RED_BLOOD_CELLS);
+    private static final int A_POS_RBC = StockLedger.cellOf(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS);
+    private static final int B_POS_RBC = StockLedger.cellOf(BloodType.B_POSITIVE, ComponentType.RED_BLOOD_CELLS);
+
+    @Test
+    void priorityBuysABoundedHeadStart() {
+        long created = millis(LocalDateTime.of(2026, 3, 1, 12, 0));
+        long step = AllocationPolicy.AGING_STEP_MILLIS;
+
+        assertEquals(created - 3 * step, AllocationPolicy.schedulingKey(3, created, null));
+        // A priority-3 arrival overtakes a priority-0 request less than three steps older, not more
+        long olderByTwoSteps = AllocationPolicy.schedulingKey(0, created - 2 * step, null);
+        long olderByFourSteps = AllocationPolicy.schedulingKey(0, created - 4 * step, null);
+        long urgent = AllocationPolicy.schedulingKey(3, created, null);
+        assertTrue(urgent < olderByTwoSteps);
+        assertTrue(olderByFourSteps < urgent);
+    }
+
+    @Test
+    void requestsComingDueGoAheadOfEveryNewArrivalEarliestDeadlineFirst() {
+        LocalDate due = LocalDate.of(2026, 3, 2);
+        long created = millis(due.atStartOfDay());
+        long dueTomorrow = AllocationPolicy.schedulingKey(0, created - AllocationPolicy.DEADLINE_HORIZON_MILLIS, due);
+        long dueLater = AllocationPolicy.schedulingKey(0, created - AllocationPolicy.DEADLINE_HORIZON_MILLIS, due.plusDays(1));
+        long topPriorityArrival = AllocationPolicy.schedulingKey(BloodRequestDto.MAX_PRIORITY, created, null);
+
+        assertTrue(dueTomorrow < topPriorityArrival);
+        assertTrue(dueTomorrow < dueLater);
+        // A far-off required date never pushes a request back
+        long plain = AllocationPolicy.schedulingKey(2, created, null);
+        assertEquals(plain, AllocationPolicy.schedulingKey(2, created, due.plusYears(1)));
+    }
+
+    @Test
+    void queueEntriesOrderBySchedulingKeyThenId() {
+        LocalDateTime created = LocalDateTime.of(2026, 3, 1, 12, 0);
+        double[] volumes = new double[ComponentType.values().length];
+        QueueEntry early = QueueEntry.of(5L, 0, created.minusHours(2), null, BloodType.A_POSITIVE, Urgency.LOW, volumes);
+        QueueEntry urgent = QueueEntry.of(4L, 1, created, null, BloodType.A_POSITIVE, Urgency.HIGH, volumes);
+        QueueEntry tie = QueueEntry.of(3L, 1, created, null, BloodType.A_POSITIVE, Urgency.HIGH, volumes);
+
+        List<QueueEntry> entries = new ArrayList<>(List.of(urgent, early, tie));
+        entries.sort(QueueEntry.PRIORITY_ORDER);
+        assertEquals(List.of(5L, 3L, 4L), entries.stream().map(QueueEntry::getId).toList());
+        // Out-of-range priorities are clamped before they reach the key
+        QueueEntry clamped = QueueEntry.of(6L, 99, created, null, BloodType.A_POSITIVE, Urgency.HIGH, volumes);
+        assertEquals(BloodRequestDto.MAX_PRIORITY, clamped.getPriority());
+    }
+
+    @Test
+    void bumpsNobodyWhenUnheldStockCoversTheDemand() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        List<QueueEntry> processing = processing(index, entry(1L, 0), held(A_POS_RBC, 100));
+
+        List<QueueEntry> bumped = AllocationPolicy.preemptionVictims(entry(9L, 7), held(A_POS_RBC, 50),
+                processing, cell -> cell == A_POS_RBC ? 50 : 0, index);
+        assertTrue(bumped.isEmpty());
+    }
+
+    @Test
+    void bumpsTheLatestLowerPriorityHoldersUntilTheShortfallIsCovered() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        List<QueueEntry> processing = new ArrayList<>();
+        processing.addAll(processing(index, entry(1L, 1), held(A_POS_RBC, 40)));
+        processing.addAll(processing(index, entry(2L, 2), held(A_POS_RBC, 40)));
+        processing.addAll(processing(index, entry(3L, 1), held(A_POS_RBC, 40)));
+        // Same priority as the preemptor, so never a victim
+        processing.addAll(processing(index, entry(4L, 5), held(A_POS_RBC, 40)));
+        // Scheduling order is 4, 2, 1, 3: request 2's extra priority level buys it a head start
+        processing.sort(QueueEntry.PRIORITY_ORDER);
+
+        List<QueueEntry> bumped = AllocationPolicy.preemptionVictims(entry(9L, 5), held(A_POS_RBC, 70),
+                processing, cell -> cell == A_POS_RBC ? 10 : 0, index);
+        assertEquals(List.of(3L, 1L), bumped.stream().map(QueueEntry::getId).toList());
+    }
+
+    @Test
+    void countsVictimsByTheCellsTheyHoldRatherThanTheirBloodType() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        List<QueueEntry> processing = new ArrayList<>();
+        // Both victims are A+ requests, one of them served from O- stock
+        processing.addAll(processing(index, entry(1L, 0), held(O_NEG_RBC, 60)));
+        processing.addAll(processing(index, entry(2L, 0), held(A_POS_RBC, 60)));
+
+        List<QueueEntry> bumped = AllocationPolicy.preemptionVictims(entry(9L, 6), held(O_NEG_RBC, 50),
+                processing, cell -> 0, index);
+        assertEquals(List.of(1L), bumped.stream().map(QueueEntry::getId).toList());
+    }
+
+    @Test
+    void preemptionDemandReachesLowerPriorityHoldsOfOtherCompatibleTypes() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        List<QueueEntry> processing = new ArrayList<>();
+        processing.addAll(processing(index, entry(1L, 0), held(O_NEG_RBC, 60)));
+        // B+ stock is no use to an A+ recipient, however much a victim holds
+        processing.addAll(processing(index, entry(2L, 0), held(B_POS_RBC, 500)));
+        double[] componentVolumes = new double[ComponentType.values().length];
+        componentVolumes[ComponentType.RED_BLOOD_CELLS.ordinal()] = 80;
+        QueueEntry urgent = QueueEntry.of(9L, 6, LocalDateTime.of(2026, 1, 1, 9, 0), null,
+                BloodType.A_POSITIVE, Urgency.HIGH, componentVolumes);
+
+        double[] demand = AllocationPolicy.preemptionDemand(urgent, cell -> cell == A_POS_RBC ? 30 : 0, index, true);
+        assertEquals(30, demand[A_POS_RBC], 1e-6);
+        assertEquals(50, demand[O_NEG_RBC], 1e-6);
+        assertEquals(0, demand[B_POS_RBC], 1e-6);
+        List<QueueEntry> bumped = AllocationPolicy.preemptionVictims(urgent, demand, processing,
+                cell -> cell == A_POS_RBC ? 30 : 0, index);
+        assertEquals(List.of(1L), bumped.stream().map(QueueEntry::getId).toList());
+
+        // Same-type only, there is nothing to take
+        assertNull(AllocationPolicy.preemptionDemand(urgent, cell -> cell == A_POS_RBC ? 30 : 0, index, false));
+    }
+
+    @Test
+    void refusesWhenEvenEveryLowerPriorityHoldWouldNotBeEnough() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        List<QueueEntry> processing = new ArrayList<>();
+        processing.addAll(processing(index, entry(1L, 1), held(A_POS_RBC, 30)));
+        processing.addAll(processing(index, entry(2L, 6), held(A_POS_RBC, 100)));
+
+        assertNull(AllocationPolicy.preemptionVictims(entry(9L, 6), held(A_POS_RBC, 50),
+                processing, cell -> cell == A_POS_RBC ? 10 : 0, index));
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static List<QueueEntry> processing(ReservedVolumeIndex index, QueueEntry entry, double[] held) {
+        index.add(entry, held);
+        return List.of(entry);
+    }
+}
@@ -0,0 +1,112 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompatibleStockAllocatorTest {
+    private static final double EPSILON = 1e-6;
+    private static final Set<BloodType> B_ANTIGEN = EnumSet.of(
+            BloodType.B_POSITIVE, BloodType.B_NEGATIVE, BloodType.AB_POSITIVE, BloodType.AB_NEGATIVE);
+
+    @Test
+    void aPositiveRedCellsAndWholeBloodNeverComeFromBOrAbDonors() {
+        for (ComponentType componentType : EnumSet.of(ComponentType.RED_BLOOD_CELLS, ComponentType.WHOLE_BLOOD)) {
+            for (BloodType donor : B_ANTIGEN) {
+                assertFalse(BloodCompatibility.canDonate(donor, BloodType.A_POSITIVE, componentType),
+                        donor + " " + componentType);
+            }
+        }
+        // Plasma runs the other way: AB plasma carries no anti-A, B plasma does
+        assertTrue(BloodCompatibility.canDonate(BloodType.AB_NEGATIVE, BloodType.A_POSITIVE, ComponentType.PLASMA));
+        assertFalse(BloodCompatibility.canDonate(BloodType.B_POSITIVE, BloodType.A_POSITIVE, ComponentType.PLASMA));
+        assertFalse(BloodCompatibility.canDonate(BloodType.B_NEGATIVE, BloodType.A_POSITIVE, ComponentType.PLATELETS));
+    }
+
+    @Test
+    void redCellDonorsFollowTheAboRhTable() {
+        assertDonors(ComponentType.RED_BLOOD_CELLS, BloodType.O_NEGATIVE, BloodType.O_NEGATIVE);
+        assertDonors(ComponentType.RED_BLOOD_CELLS, BloodType.A_POSITIVE,
+                BloodType.A_POSITIVE, BloodType.A_NEGATIVE, BloodType.O_POSITIVE, BloodType.O_NEGATIVE);
+        assertDonors(ComponentType.RED_BLOOD_CELLS, BloodType.B_NEGATIVE, BloodType.B_NEGATIVE, BloodType.O_NEGATIVE);
+        assertEquals(BloodType.values().length,
+                BloodCompatibility.donorsByPreference(ComponentType.RED_BLOOD_CELLS, BloodType.AB_POSITIVE).length);
+        assertDonors(ComponentType.WHOLE_BLOOD, BloodType.A_POSITIVE, BloodType.A_POSITIVE, BloodType.A_NEGATIVE);
+    }
+
+    @Test
+    void neverAllocatesIncompatibleStockToAnAPositiveRequest() {
+        double[] available = new double[StockLedger.CELL_COUNT];
+        for (BloodType donor : B_ANTIGEN) {
+            available[StockLedger.cellOf(donor, ComponentType.RED_BLOOD_CELLS)] = 1000;
+            available[StockLedger.cellOf(donor, ComponentType.WHOLE_BLOOD)] = 1000;
+        }
+        double[] before = available.clone();
+
+        assertNull(CompatibleStockAllocator.allocate(request(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS, 100),
+                available, true));
+        assertNull(CompatibleStockAllocator.allocate(request(BloodType.A_POSITIVE, ComponentType.WHOLE_BLOOD, 100),
+                available, true));
+        assertArrayEquals(before, available, EPSILON);
+    }
+
+    @Test
+    void fillsFromTheExactTypeFirstThenTheLeastVersatileDonors() {
+        double[] available = new double[StockLedger.CELL_COUNT];
+        available[StockLedger.cellOf(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS)] = 30;
+        available[StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.RED_BLOOD_CELLS)] = 100;
+        available[StockLedger.cellOf(BloodType.A_NEGATIVE, ComponentType.RED_BLOOD_CELLS)] = 50;
+        available[StockLedger.cellOf(BloodType.AB_POSITIVE, ComponentType.RED_BLOOD_CELLS)] = 100;
+
+        double[] demand = CompatibleStockAllocator.allocate(request(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS, 100),
+                available, true);
+        assertNotNull(demand);
+        assertEquals(30, demand[StockLedger.cellOf(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS)], EPSILON);
+        assertEquals(50, demand[StockLedger.cellOf(BloodType.A_NEGATIVE, ComponentType.RED_BLOOD_CELLS)], EPSILON);
+        assertEquals(20, demand[StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.RED_BLOOD_CELLS)], EPSILON);
+        assertEquals(0, demand[StockLedger.cellOf(BloodType.AB_POSITIVE, ComponentType.RED_BLOOD_CELLS)], EPSILON);
+        // The snapshot is debited by exactly the demand
+        assertEquals(80, available[StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.RED_BLOOD_CELLS)], EPSILON);
+        assertEquals(0, available[StockLedger.cellOf(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS)], EPSILON);
+    }
+
+    @Test
+    void sameTypeOnlyWhenCrossTypeIsOff() {
+        double[] available = new double[StockLedger.CELL_COUNT];
+        available[StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.RED_BLOOD_CELLS)] = 1000;
+        QueueEntry request = request(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS, 10);
+
+        assertNull(CompatibleStockAllocator.allocate(request, available, false));
+        int[] changedDonors = new int[ComponentType.values().length];
+        changedDonors[ComponentType.RED_BLOOD_CELLS.ordinal()] = 1 << BloodType.O_NEGATIVE.ordinal();
+        assertFalse(CompatibleStockAllocator.isAffectedBy(request, changedDonors, false));
+        assertTrue(CompatibleStockAllocator.isAffectedBy(request, changedDonors, true));
+        changedDonors[ComponentType.RED_BLOOD_CELLS.ordinal()] = 1 << BloodType.B_POSITIVE.ordinal();
+        assertFalse(CompatibleStockAllocator.isAffectedBy(request, changedDonors, true));
+    }
+
+    private static void assertDonors(ComponentType componentType, BloodType recipient, BloodType... expected) {
+        BloodType[] donors = BloodCompatibility.donorsByPreference(componentType, recipient);
+        assertEquals(Arrays.asList(expected), Arrays.asList(donors), componentType + " for " + recipient);
+    }
+
+    private static QueueEntry request(BloodType bloodType, ComponentType componentType, double volume) {
+        double[] componentVolumes = new double[ComponentType.values().length];
+        componentVolumes[componentType.ordinal()] = volume;
+        return QueueEntry.of(1L, 0, LocalDateTime.of(2026, 1, 1, 8, 0), null, bloodType, Urgency.LOW, componentVolumes);
+    }
+}
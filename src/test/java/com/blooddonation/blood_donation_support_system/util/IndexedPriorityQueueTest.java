@@ -0,0 +1,131 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedPriorityQueueTest {
+    private static final Comparator<Item> BY_RANK = Comparator.comparingInt(Item::rank).thenComparing(Item::id);
+
+    private record Item(Long id, int rank, int bucket) {
+    }
+
+    @Test
+    void pollsInPriorityOrderForEveryArity() {
+        for (int arity = 2; arity <= 5; arity++) {
+            IndexedPriorityQueue<Item> queue = new IndexedPriorityQueue<>(arity, BY_RANK, Item::id);
+            List<Item> expected = new ArrayList<>();
+            Random random = new Random(arity);
+            for (long id = 0; id < 200; id++) {
+                Item item = new Item(id, random.nextInt(50), 0);
+                queue.offer(item);
+                expected.add(item);
+            }
+            expected.sort(BY_RANK);
+            assertEquals(expected, queue.toSortedList());
+            assertEquals(expected, drain(queue), "arity " + arity);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    void offeringAQueuedIdReplacesAndRepositionsIt() {
+        IndexedPriorityQueue<Item> queue = new IndexedPriorityQueue<>(BY_RANK, Item::id);
+        for (long id = 0; id < 20; id++) queue.offer(new Item(id, (int) id * 10, 0));
+
+        // Sifts up past every other element
+        queue.offer(new Item(15L, -1, 0));
+        assertEquals(15L, queue.peek().id());
+        // Sifts down to the bottom
+        queue.offer(new Item(15L, 1000, 0));
+        queue.offer(new Item(0L, 999, 0));
+        assertEquals(20, queue.size());
+        assertEquals(1L, queue.peek().id());
+
+        List<Item> drained = drain(queue);
+        assertEquals(0L, drained.get(18).id());
+        assertEquals(15L, drained.get(19).id());
+    }
+
+    @Test
+    void removesByIdFromAnywhereInTheHeap() {
+        IndexedPriorityQueue<Item> queue = new IndexedPriorityQueue<>(3, BY_RANK, Item::id);
+        List<Item> expected = new ArrayList<>();
+        Random random = new Random(7);
+        for (long id = 0; id < 100; id++) {
+            Item item = new Item(id, random.nextInt(30), 0);
+            queue.offer(item);
+            expected.add(item);
+        }
+        for (long id = 0; id < 100; id += 3) {
+            assertEquals(id, queue.remove(id).id());
+            assertFalse(queue.contains(id));
+        }
+        expected.removeIf(item -> item.id() % 3 == 0);
+        assertNull(queue.remove(0L));
+        assertNull(queue.get(3L));
+        assertTrue(queue.contains(1L));
+
+        expected.sort(BY_RANK);
+        assertEquals(expected, drain(queue));
+    }
+
+    @Test
+    void keepsPerBucketCountsAcrossOfferReplaceAndRemove() {
+        IndexedPriorityQueue<Item> queue = new IndexedPriorityQueue<>(BY_RANK, Item::id, Item::bucket, 3);
+        queue.offer(new Item(1L, 5, 0));
+        queue.offer(new Item(2L, 4, 0));
+        queue.offer(new Item(3L, 3, 1));
+        queue.offer(new Item(4L, 2, 2));
+        // Negative and out-of-range buckets stay uncounted
+        queue.offer(new Item(5L, 1, -1));
+        queue.offer(new Item(6L, 0, 3));
+        assertEquals(2, queue.count(0));
+        assertEquals(1, queue.count(1));
+        assertEquals(1, queue.count(2));
+        assertEquals(0, queue.count(3));
+        assertEquals(0, queue.count(-1));
+
+        // Replacing moves the element between buckets
+        queue.offer(new Item(1L, 5, 2));
+        assertEquals(1, queue.count(0));
+        assertEquals(2, queue.count(2));
+
+        queue.remove(3L);
+        assertEquals(0, queue.count(1));
+        assertEquals(6L, queue.poll().id());
+        assertEquals(5L, queue.poll().id());
+        assertEquals(4L, queue.poll().id());
+        assertEquals(1, queue.count(2));
+        assertEquals(1, queue.count(0));
+    }
+
+    @Test
+    void countsNothingWithoutABucketFunction() {
+        IndexedPriorityQueue<Item> queue = new IndexedPriorityQueue<>(BY_RANK, Item::id);
+        queue.offer(new Item(1L, 0, 0));
+        assertEquals(0, queue.count(0));
+    }
+
+    @Test
+    void rejectsElementsWithoutAnIdAndArityBelowTwo() {
+        IndexedPriorityQueue<Item> queue = new IndexedPriorityQueue<>(BY_RANK, Item::id);
+        assertThrows(IllegalArgumentException.class, () -> queue.offer(new Item(null, 0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> new IndexedPriorityQueue<>(1, BY_RANK, Item::id));
+    }
+
+    private static List<Item> drain(IndexedPriorityQueue<Item> queue) {
+        List<Item> drained = new ArrayList<>();
+        for (Item item = queue.poll(); item != null; item = queue.poll()) drained.add(item);
+        return drained;
+    }
+}
@@ -0,0 +1,79 @@
+package com.blooddonation.blood_donation_support_system.util;
+
+import com.blooddonation.blood_donation_support_system.component.StockLedger;
+import com.blooddonation.blood_donation_support_system.enums.BloodType;
+import com.blooddonation.blood_donation_support_system.enums.ComponentType;
+import com.blooddonation.blood_donation_support_system.enums.Urgency;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReservedVolumeIndexTest {
+    private static final double EPSILON = 1e-6;
+    private static final int O_NEG_RBC = StockLedger.cellOf(BloodType.O_NEGATIVE, ComponentType.RED_BLOOD_CELLS);
+    private static final int A_POS_RBC = StockLedger.cellOf(BloodType.A_POSITIVE, ComponentType.RED_BLOOD_CELLS);
+
+    @Test
+    void sumsHeldVolumeOfStrictlyLowerPrioritiesPerCell() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        index.add(entry(1L, 1), held(O_NEG_RBC, 100));
+        index.add(entry(2L, 3), held(O_NEG_RBC, 50));
+        index.add(entry(3L, 3), held(A_POS_RBC, 20));
+
+        assertEquals(0, index.reservedBelow(O_NEG_RBC, 1), EPSILON);
+        assertEquals(100, index.reservedBelow(O_NEG_RBC, 2), EPSILON);
+        assertEquals(100, index.reservedBelow(O_NEG_RBC, 3), EPSILON);
+        assertEquals(150, index.reservedBelow(O_NEG_RBC, 4), EPSILON);
+        assertEquals(20, index.reservedBelow(A_POS_RBC, 7), EPSILON);
+        // Priorities outside the range are clamped rather than rejected
+        assertEquals(0, index.reservedBelow(O_NEG_RBC, -5), EPSILON);
+        assertEquals(150, index.reservedBelow(O_NEG_RBC, 100), EPSILON);
+    }
+
+    @Test
+    void addingAgainReplacesTheEarlierEntry() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        index.add(entry(1L, 2), held(O_NEG_RBC, 100));
+        index.add(entry(1L, 2), held(A_POS_RBC, 30));
+
+        assertEquals(0, index.reservedBelow(O_NEG_RBC, 7), EPSILON);
+        assertEquals(30, index.reservedBelow(A_POS_RBC, 7), EPSILON);
+        // Nothing held removes the entry
+        index.add(entry(1L, 2), null);
+        assertNull(index.heldBy(1L));
+        assertEquals(0, index.reservedBelow(A_POS_RBC, 7), EPSILON);
+    }
+
+    @Test
+    void removeUndoesAddAndHeldByReturnsACopy() {
+        ReservedVolumeIndex index = new ReservedVolumeIndex();
+        double[] held = held(O_NEG_RBC, 40);
+        index.add(entry(1L, 0), held);
+        held[O_NEG_RBC] = 1000;
+
+        double[] copy = index.heldBy(1L);
+        assertEquals(40, copy[O_NEG_RBC], EPSILON);
+        copy[O_NEG_RBC] = 0;
+        assertArrayEquals(held(O_NEG_RBC, 40), index.heldBy(1L), EPSILON);
+
+        index.remove(1L);
+        index.remove(1L);
+        assertNull(index.heldBy(1L));
+        assertEquals(0, index.reservedBelow(O_NEG_RBC, 7), EPSILON);
+    }
+
+    static QueueEntry entry(Long id, int priority) {
+        return QueueEntry.of(id, priority, LocalDateTime.of(2026, 1, 1, 8, 0).plusMinutes(id), null,
+                BloodType.A_POSITIVE, Urgency.LOW, new double[ComponentType.values().length]);
+    }
+
+    static double[] held(int cell, double volume) {
+        double[] held = new double[StockLedger.CELL_COUNT];
+        held[cell] = volume;
+        return held;
+    }
+}